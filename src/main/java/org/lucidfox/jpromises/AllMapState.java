@@ -0,0 +1,204 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises;
+
+import java.util.Map;
+
+import org.lucidfox.jpromises.annotation.GwtCompatible;
+import org.lucidfox.jpromises.core.RejectCallback;
+import org.lucidfox.jpromises.core.ResolveCallback;
+import org.lucidfox.jpromises.core.Resolver;
+import org.lucidfox.jpromises.core.Thenable;
+
+/**
+ * The completion state of an {@code allMap} or {@code allMapSettled} operation. Values are stored by the index of
+ * their key in the input map's iteration order, so no hashing happens until the result map is built.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+@GwtCompatible
+/* package */ final class AllMapState<K, V> {
+	private static final Object REJECTED = new Object();
+	
+	private final PromiseFactory factory;
+	private final Resolver<Object> resolver;
+	private final Object[] keys;
+	private final Object[] values;
+	private final Map<K, V> target;
+	private final boolean settled;
+	private final Map<? super K, ? super Throwable> failures;
+	private int remaining;
+	private int rejectedCount;
+	private boolean done;
+	
+	/**
+	 * @param resolver the resolver of the combined promise
+	 * @param size the number of keys
+	 * @param target the caller's map to put values into as they arrive, or {@code null} to build a compact map
+	 * @param settled {@code true} to wait for all thenables and leave out rejected ones, {@code false} to reject
+	 * 			the combined promise as soon as one of them is rejected
+	 * @param failures the map to put rejection reasons into if {@code settled} is {@code true}, or {@code null}
+	 */
+	@SuppressWarnings("unchecked")
+	/* package */ AllMapState(final PromiseFactory factory, final Resolver<?> resolver, final int size,
+			final Map<K, V> target, final boolean settled, final Map<? super K, ? super Throwable> failures) {
+		this.factory = factory;
+		this.resolver = (Resolver<Object>) resolver;
+		this.keys = new Object[size];
+		this.values = new Object[size];
+		this.target = target;
+		this.settled = settled;
+		this.failures = failures;
+		this.remaining = size;
+	}
+	
+	/* package */ void subscribe(final Map<K, ? extends Thenable<? extends V>> thenables) throws Exception {
+		if (remaining == 0) {
+			complete();
+			return;
+		}
+		
+		int index = 0;
+		
+		for (final Map.Entry<K, ? extends Thenable<? extends V>> entry: thenables.entrySet()) {
+			final Slot slot = new Slot(index);
+			keys[index] = entry.getKey();
+			entry.getValue().then(slot, slot);
+			index++;
+		}
+	}
+	
+	/* package */ void failed(final Exception exception) {
+		synchronized (this) {
+			if (done) {
+				return;
+			}
+			
+			done = true;
+		}
+		
+		resolver.reject(exception);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void resolved(final int index, final Object value) {
+		synchronized (this) {
+			if (done) {
+				return;
+			}
+			
+			values[index] = value;
+			
+			if (target != null) {
+				target.put((K) keys[index], (V) value);
+			}
+			
+			if (--remaining > 0) {
+				return;
+			}
+			
+			done = true;
+		}
+		
+		complete();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void rejected(final int index, final Throwable exception) {
+		synchronized (this) {
+			if (done) {
+				return;
+			}
+			
+			if (!settled) {
+				done = true;
+			} else {
+				values[index] = REJECTED;
+				rejectedCount++;
+				
+				if (failures != null) {
+					((Map<Object, Object>) failures).put(keys[index], exception);
+				}
+				
+				if (--remaining > 0) {
+					return;
+				}
+				
+				done = true;
+			}
+		}
+		
+		if (!settled) {
+			resolver.reject(exception);
+		} else {
+			complete();
+		}
+	}
+	
+	private void complete() {
+		if (target != null) {
+			resolver.resolve(target);
+			return;
+		}
+		
+		if (rejectedCount > 0) {
+			// Compact the arrays in place, dropping rejected entries
+			int size = 0;
+			
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] != REJECTED) {
+					keys[size] = keys[i];
+					values[size] = values[i];
+					size++;
+				}
+			}
+			
+			resolver.resolve(new CompactHashMap<K, V>(keys, values, size));
+		} else {
+			resolver.resolve(new CompactHashMap<K, V>(keys, values, values.length));
+		}
+	}
+	
+	/**
+	 * Callbacks for the thenable with the given index.
+	 */
+	private final class Slot implements ResolveCallback<Object, Void>, RejectCallback<Void> {
+		private final int index;
+		
+		private Slot(final int index) {
+			this.index = index;
+		}
+
+		@Override
+		public Promise<Void> onResolve(final Object value) {
+			resolved(index, value);
+			return null;
+		}
+
+		@Override
+		public Promise<Void> onReject(final Throwable exception) {
+			rejected(index, exception);
+			return factory.resolve((Void) null);
+		}
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import org.lucidfox.jpromises.annotation.GwtCompatible;
+
+/**
+ * An immutable map over parallel key and value arrays, with an open-addressing (linear probing) index table sized
+ * once for the known number of keys. Iteration follows the order of the arrays.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+@GwtCompatible
+/* package */ final class CompactHashMap<K, V> extends AbstractMap<K, V> {
+	private final Object[] keys;
+	private final Object[] values;
+	private final int size;
+	// Indexes into keys and values, plus one; 0 marks a free slot
+	private final int[] table;
+	private Set<Map.Entry<K, V>> entrySet;
+	
+	/**
+	 * Creates a map over the first {@code size} elements of the arrays, which are not copied. Keys must be distinct.
+	 */
+	/* package */ CompactHashMap(final Object[] keys, final Object[] values, final int size) {
+		this.keys = keys;
+		this.values = values;
+		this.size = size;
+		
+		int capacity = 2;
+		
+		while (capacity < size * 2) {
+			capacity <<= 1;
+		}
+		
+		table = new int[capacity];
+		
+		for (int i = 0; i < size; i++) {
+			int slot = hash(keys[i]) & (capacity - 1);
+			
+			while (table[slot] != 0) {
+				slot = (slot + 1) & (capacity - 1);
+			}
+			
+			table[slot] = i + 1;
+		}
+	}
+	
+	private static int hash(final Object key) {
+		if (key == null) {
+			return 0;
+		}
+		
+		final int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+	
+	private int indexOf(final Object key) {
+		final int mask = table.length - 1;
+		int slot = hash(key) & mask;
+		int entry;
+		
+		while ((entry = table[slot]) != 0) {
+			final Object candidate = keys[entry - 1];
+			
+			if (key == null ? candidate == null : key.equals(candidate)) {
+				return entry - 1;
+			}
+			
+			slot = (slot + 1) & mask;
+		}
+		
+		return -1;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public boolean containsKey(final Object key) {
+		return indexOf(key) >= 0;
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(final Object key) {
+		final int index = indexOf(key);
+		return index < 0 ? null : (V) values[index];
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		if (entrySet == null) {
+			entrySet = new AbstractSet<Map.Entry<K, V>>() {
+				@Override
+				public Iterator<Map.Entry<K, V>> iterator() {
+					return new Iterator<Map.Entry<K, V>>() {
+						private int next;
+						
+						@Override
+						public boolean hasNext() {
+							return next < size;
+						}
+
+						@Override
+						public Map.Entry<K, V> next() {
+							if (next >= size) {
+								throw new NoSuchElementException();
+							}
+							
+							return new Entry(next++);
+						}
+
+						@Override
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return size;
+				}
+			};
+		}
+		
+		return entrySet;
+	}
+	
+	private final class Entry implements Map.Entry<K, V> {
+		private final int index;
+		
+		private Entry(final int index) {
+			this.index = index;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public K getKey() {
+			return (K) keys[index];
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V getValue() {
+			return (V) values[index];
+		}
+
+		@Override
+		public V setValue(final V value) {
+			throw new UnsupportedOperationException();
+		}
+		
+		@Override
+		public boolean equals(final Object obj) {
+			if (!(obj instanceof Map.Entry)) {
+				return false;
+			}
+			
+			final Map.Entry<?, ?> other = (Map.Entry<?, ?>) obj;
+			final Object key = keys[index];
+			final Object value = values[index];
+			return (key == null ? other.getKey() == null : key.equals(other.getKey()))
+					&& (value == null ? other.getValue() == null : value.equals(other.getValue()));
+		}
+		
+		@Override
+		public int hashCode() {
+			final Object key = keys[index];
+			final Object value = values[index];
+			return (key == null ? 0 : key.hashCode()) ^ (value == null ? 0 : value.hashCode());
+		}
+		
+		@Override
+		public String toString() {
+			return keys[index] + "=" + values[index];
+		}
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Future;
+import java.util.function.BiConsumer;
+
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+import org.lucidfox.jpromises.core.PromiseHandler;
+import org.lucidfox.jpromises.core.Resolver;
+
+/**
+ * <p>
+ * Conversions between {@link Promise} and Java 8's {@link CompletableFuture} and {@link CompletionStage}. Both
+ * directions hook the completion path of the source directly, so no extra deferred invocation is performed by the
+ * conversion itself.
+ * </p><p>
+ * These live in a separate class so that {@link Promise} and {@link PromiseFactory} do not refer to Java 8 types;
+ * this class is only loaded, and only requires Java 8, when it is used.
+ * </p>
+ */
+@GwtIncompatible("java.util.concurrent.CompletionStage")
+public final class CompletableFutures {
+	private CompletableFutures() { }
+	
+	/**
+	 * <p>
+	 * Returns a {@link CompletableFuture} that is completed with the promise's value or exception as soon as the
+	 * promise is settled.
+	 * </p><p>
+	 * The future is completed directly in the thread that settles the promise, without going through the promise
+	 * factory's deferred invoker, so any dependent stages of the future run under {@code CompletableFuture}'s own
+	 * rules. Cancelling the returned future does not affect the promise, which has no notion of cancellation;
+	 * however, if the promise was created with {@link #fromCompletionStage}, the cancellation is propagated to the
+	 * source future.
+	 * </p>
+	 *
+	 * @param <V> the value type of the promise
+	 * @param promise the promise
+	 * @return a future completed when the promise is settled
+	 */
+	public static <V> CompletableFuture<V> toCompletableFuture(final Promise<V> promise) {
+		final PromiseFuture<V> future = new PromiseFuture<>(promise);
+		
+		promise.addSettleListener(new Promise.SettleListener<V>() {
+			@Override
+			public void onResolve(final V value) {
+				future.complete(value);
+			}
+			
+			@Override
+			public void onReject(final Throwable exception) {
+				future.completeExceptionally(exception);
+			}
+		});
+		
+		return future;
+	}
+	
+	/**
+	 * <p>
+	 * Returns a {@link Promise} created by the given factory, that is resolved or rejected when the given
+	 * {@link CompletionStage} completes.
+	 * </p><p>
+	 * The promise is settled directly in the thread that completes the stage, without an extra deferred invocation;
+	 * {@code then} callbacks on the promise are still invoked using the factory's deferred invoker. If the stage
+	 * completes exceptionally with a {@link CompletionException}, the promise is rejected with its cause. If the
+	 * stage is cancelled, the promise is rejected with {@link java.util.concurrent.CancellationException
+	 * CancellationException}. Conversely, if the stage is also a {@link Future}, cancelling the result of
+	 * {@link #toCompletableFuture} on the returned promise cancels the stage.
+	 * </p><p>
+	 * If {@code stage} was itself returned by {@link #toCompletableFuture} on a promise created by the same factory,
+	 * that promise is returned unchanged.
+	 * </p>
+	 *
+	 * @param <V> the value type of the promise
+	 * @param factory the factory to create the promise with
+	 * @param stage the completion stage
+	 * @return the promise settled when the stage completes
+	 */
+	public static <V> Promise<V> fromCompletionStage(final PromiseFactory factory,
+			final CompletionStage<? extends V> stage) {
+		if (stage instanceof PromiseFuture) {
+			// Round trip; hand back the original promise instead of stacking another one on top
+			final Promise<?> source = ((PromiseFuture<?>) stage).promise;
+			
+			if (source.getFactory() == factory) {
+				@SuppressWarnings("unchecked")
+				final Promise<V> promise = (Promise<V>) source;
+				return promise;
+			}
+		}
+		
+		return factory.promise(new PromiseHandler<V>() {
+			@Override
+			public void handle(final Resolver<V> resolve) {
+				if (stage instanceof Future) {
+					resolve.getPromise().setSourceFuture((Future<?>) stage);
+				}
+				
+				stage.whenComplete(new BiConsumer<V, Throwable>() {
+					@Override
+					public void accept(final V value, final Throwable exception) {
+						if (exception == null) {
+							resolve.resolve(value);
+						} else if (exception instanceof CompletionException && exception.getCause() != null) {
+							resolve.reject(exception.getCause());
+						} else {
+							// Includes CancellationException when the source stage is cancelled
+							resolve.reject(exception);
+						}
+					}
+				});
+			}
+		});
+	}
+	
+	/**
+	 * The future returned by {@link #toCompletableFuture}. It remembers the promise it was created from,
+	 * to short-circuit round trips and propagate cancellation.
+	 */
+	private static final class PromiseFuture<V> extends CompletableFuture<V> {
+		private final Promise<V> promise;
+		
+		private PromiseFuture(final Promise<V> promise) {
+			this.promise = promise;
+		}
+		
+		@Override
+		public boolean cancel(final boolean mayInterruptIfRunning) {
+			final boolean cancelled = super.cancel(mayInterruptIfRunning);
+			
+			if (cancelled) {
+				final Future<?> source = promise.getSourceFuture();
+				
+				if (source != null) {
+					source.cancel(mayInterruptIfRunning);
+				}
+			}
+			
+			return cancelled;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises;
+
+import org.lucidfox.jpromises.annotation.GwtCompatible;
+import org.lucidfox.jpromises.core.ContextPropagator;
+
+/**
+ * An immutable snapshot of the contexts captured by a set of {@link ContextPropagator}s.
+ */
+@GwtCompatible
+/* package */ final class ContextSnapshot {
+	private final ContextPropagator<?>[] propagators;
+	private final Object[] values;
+	
+	private ContextSnapshot(final ContextPropagator<?>[] propagators, final Object[] values) {
+		this.propagators = propagators;
+		this.values = values;
+	}
+	
+	/**
+	 * Captures the current thread's contexts.
+	 * 
+	 * @param propagators the propagators (not modified afterwards)
+	 * @return the snapshot, or {@code null} if there are no propagators
+	 */
+	/* package */ static ContextSnapshot capture(final ContextPropagator<?>[] propagators) {
+		if (propagators.length == 0) {
+			return null;
+		}
+		
+		final Object[] values = new Object[propagators.length];
+		
+		for (int i = 0; i < propagators.length; i++) {
+			values[i] = propagators[i].capture();
+		}
+		
+		return new ContextSnapshot(propagators, values);
+	}
+	
+	/**
+	 * Installs the captured contexts in the current thread.
+	 * 
+	 * @return the previously installed contexts, to be passed to {@link #reset}
+	 */
+	/* package */ Object[] restore() {
+		final Object[] previous = new Object[propagators.length];
+		
+		for (int i = 0; i < propagators.length; i++) {
+			previous[i] = restore(propagators[i], values[i]);
+		}
+		
+		return previous;
+	}
+	
+	/**
+	 * Reinstalls the contexts that were installed before {@link #restore} was called, in reverse order.
+	 * 
+	 * @param previous the value returned by {@link #restore}
+	 */
+	/* package */ void reset(final Object[] previous) {
+		for (int i = propagators.length - 1; i >= 0; i--) {
+			restore(propagators[i], previous[i]);
+		}
+	}
+	
+	private static <C> Object restore(final ContextPropagator<C> propagator, final Object value) {
+		@SuppressWarnings("unchecked")
+		final C context = (C) value;
+		return propagator.restore(context);
+	}
+}
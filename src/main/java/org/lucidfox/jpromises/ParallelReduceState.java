@@ -0,0 +1,169 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+import org.lucidfox.jpromises.core.Combiner2;
+import org.lucidfox.jpromises.core.RejectCallback;
+import org.lucidfox.jpromises.core.ResolveCallback;
+import org.lucidfox.jpromises.core.Resolver;
+import org.lucidfox.jpromises.core.Thenable;
+import org.lucidfox.jpromises.core.ThrowingSupplier;
+
+/**
+ * The state of a {@code reduceAsCompletedParallel} operation. Values are folded into partial accumulators striped
+ * by thread, each with its own lock, so callbacks running on different threads rarely contend. The partial
+ * accumulators are merged once all thenables are resolved.
+ *
+ * @param <V> the value type of the thenables
+ * @param <A> the accumulator type
+ */
+@GwtIncompatible("java.util.concurrent.atomic")
+/* package */ final class ParallelReduceState<V, A> implements ResolveCallback<V, Void>, RejectCallback<Void> {
+	private final PromiseFactory factory;
+	private final Resolver<A> resolver;
+	private final ThrowingSupplier<? extends A> identity;
+	private final Combiner2<? super A, ? super V, ? extends A> accumulator;
+	private final Combiner2<? super A, ? super A, ? extends A> merger;
+	private final Stripe<A>[] stripes;
+	private final AtomicInteger remaining;
+	private final AtomicBoolean done = new AtomicBoolean();
+	
+	private static final class Stripe<A> {
+		private boolean initialized;
+		private A partial;
+	}
+	
+	/* package */ ParallelReduceState(final PromiseFactory factory, final Resolver<A> resolver, final int size,
+			final ThrowingSupplier<? extends A> identity,
+			final Combiner2<? super A, ? super V, ? extends A> accumulator,
+			final Combiner2<? super A, ? super A, ? extends A> merger) {
+		this.factory = factory;
+		this.resolver = resolver;
+		this.identity = identity;
+		this.accumulator = accumulator;
+		this.merger = merger;
+		this.remaining = new AtomicInteger(size);
+		
+		int stripeCount = 1;
+		
+		while (stripeCount < Runtime.getRuntime().availableProcessors() * 2) {
+			stripeCount <<= 1;
+		}
+		
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		final Stripe<A>[] newStripes = new Stripe[stripeCount];
+		stripes = newStripes;
+		
+		for (int i = 0; i < stripeCount; i++) {
+			stripes[i] = new Stripe<>();
+		}
+	}
+	
+	/* package */ void subscribe(final Collection<? extends Thenable<? extends V>> thenables) throws Exception {
+		if (thenables.isEmpty()) {
+			complete();
+			return;
+		}
+		
+		for (final Thenable<? extends V> thenable: thenables) {
+			thenable.then(this, this);
+		}
+	}
+	
+	/* package */ void failed(final Throwable exception) {
+		if (done.compareAndSet(false, true)) {
+			resolver.reject(exception);
+		}
+	}
+
+	@Override
+	public Promise<Void> onResolve(final V value) {
+		if (done.get()) {
+			return null;
+		}
+		
+		final Stripe<A> stripe = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+		
+		try {
+			synchronized (stripe) {
+				if (!stripe.initialized) {
+					stripe.partial = identity.get();
+					stripe.initialized = true;
+				}
+				
+				stripe.partial = accumulator.combine(stripe.partial, value);
+			}
+		} catch (final Exception e) {
+			failed(e);
+			return null;
+		}
+		
+		if (remaining.decrementAndGet() == 0) {
+			complete();
+		}
+		
+		return null;
+	}
+
+	@Override
+	public Promise<Void> onReject(final Throwable exception) {
+		failed(exception);
+		return factory.resolve((Void) null);
+	}
+	
+	private void complete() {
+		try {
+			A result = null;
+			boolean first = true;
+			
+			for (final Stripe<A> stripe: stripes) {
+				synchronized (stripe) {
+					if (!stripe.initialized) {
+						continue;
+					}
+					
+					if (first) {
+						result = stripe.partial;
+						first = false;
+					} else {
+						result = merger.combine(result, stripe.partial);
+					}
+				}
+			}
+			
+			if (first) {
+				result = identity.get();
+			}
+			
+			if (done.compareAndSet(false, true)) {
+				resolver.resolve(result);
+			}
+		} catch (final Exception e) {
+			failed(e);
+		}
+	}
+}
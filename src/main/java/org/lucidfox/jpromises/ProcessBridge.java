@@ -0,0 +1,261 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises;
+
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiConsumer;
+
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+import org.lucidfox.jpromises.core.ProcessOutputListener;
+import org.lucidfox.jpromises.core.PromiseHandler;
+import org.lucidfox.jpromises.core.Resolver;
+
+/**
+ * <p>
+ * Promises for the exit of child processes, without a thread blocked in {@link Process#waitFor()} per process.
+ * </p><p>
+ * On Java 9 and later, a plain exit promise uses {@code Process.onExit()}, called reflectively since the library
+ * is compiled for Java 7. Otherwise, and whenever output is streamed to listeners, processes are watched by a
+ * single polling thread shared by all of them, which reads whatever output is available without blocking and
+ * checks whether each process has exited. The thread only runs while there are processes to watch, and polls more
+ * slowly while they are idle.
+ * </p>
+ */
+@GwtIncompatible("java.lang.Process")
+/* package */ final class ProcessBridge {
+	private static final long MIN_POLL_MILLIS = 1;
+	private static final long MAX_POLL_MILLIS = 50;
+	private static final int BUFFER_SIZE = 8192;
+	
+	private static final int IDLE = 0;
+	private static final int ACTIVE = 1;
+	private static final int DONE = 2;
+	
+	private static final Method ON_EXIT = findOnExit();
+	
+	private static final Object LOCK = new Object();
+	// Guarded by LOCK
+	private static final List<Watch> WATCHES = new ArrayList<>();
+	private static Thread poller;
+	
+	private ProcessBridge() { }
+	
+	private static Method findOnExit() {
+		try {
+			return Process.class.getMethod("onExit");
+		} catch (final NoSuchMethodException e) {
+			return null;
+		}
+	}
+	
+	/* package */ static Promise<Integer> onExit(final PromiseFactory factory, final Process process) {
+		return factory.promise(new PromiseHandler<Integer>() {
+			@Override
+			public void handle(final Resolver<Integer> resolve) throws Exception {
+				if (ON_EXIT == null) {
+					watch(new Watch(process, resolve, null, null));
+				} else {
+					OnExit.subscribe(process, resolve);
+				}
+			}
+		});
+	}
+	
+	/* package */ static Promise<Integer> onExit(final PromiseFactory factory, final Process process,
+			final ProcessOutputListener stdout, final ProcessOutputListener stderr) {
+		return factory.promise(new PromiseHandler<Integer>() {
+			@Override
+			public void handle(final Resolver<Integer> resolve) {
+				watch(new Watch(process, resolve, stdout, stderr));
+			}
+		});
+	}
+	
+	private static void watch(final Watch watch) {
+		synchronized (LOCK) {
+			WATCHES.add(watch);
+			
+			if (poller == null) {
+				poller = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						poll();
+					}
+				}, "jpromises-process-poller");
+				poller.setDaemon(true);
+				poller.start();
+			}
+		}
+	}
+	
+	private static void poll() {
+		final byte[] buffer = new byte[BUFFER_SIZE];
+		long delay = MIN_POLL_MILLIS;
+		
+		while (true) {
+			final Watch[] watches;
+			
+			synchronized (LOCK) {
+				if (WATCHES.isEmpty()) {
+					poller = null;
+					return;
+				}
+				
+				watches = WATCHES.toArray(new Watch[WATCHES.size()]);
+			}
+			
+			boolean active = false;
+			
+			for (final Watch watch: watches) {
+				final int status = watch.poll(buffer);
+				
+				if (status == DONE) {
+					synchronized (LOCK) {
+						WATCHES.remove(watch);
+					}
+				}
+				
+				active |= status != IDLE;
+			}
+			
+			delay = active ? MIN_POLL_MILLIS : Math.min(delay * 2, MAX_POLL_MILLIS);
+			
+			try {
+				Thread.sleep(delay);
+			} catch (final InterruptedException e) {
+				// Nobody else owns this thread; just poll again
+			}
+		}
+	}
+	
+	/**
+	 * A process watched by the polling thread.
+	 */
+	private static final class Watch {
+		private final Process process;
+		private final Resolver<Integer> resolver;
+		private final InputStream stdout;
+		private final ProcessOutputListener stdoutListener;
+		private final InputStream stderr;
+		private final ProcessOutputListener stderrListener;
+		
+		private Watch(final Process process, final Resolver<Integer> resolver,
+				final ProcessOutputListener stdoutListener, final ProcessOutputListener stderrListener) {
+			this.process = process;
+			this.resolver = resolver;
+			this.stdout = stdoutListener == null ? null : process.getInputStream();
+			this.stdoutListener = stdoutListener;
+			this.stderr = stderrListener == null ? null : process.getErrorStream();
+			this.stderrListener = stderrListener;
+		}
+		
+		private int poll(final byte[] buffer) {
+			try {
+				boolean active = pump(stdout, stdoutListener, buffer) | pump(stderr, stderrListener, buffer);
+				final Integer exitValue = exitValue();
+				
+				if (exitValue == null) {
+					return active ? ACTIVE : IDLE;
+				}
+				
+				// The process is gone, so whatever it wrote is already in the pipes, possibly written after the
+				// pump above found them empty
+				do {
+					active = pump(stdout, stdoutListener, buffer) | pump(stderr, stderrListener, buffer);
+				} while (active);
+				
+				resolver.resolve(exitValue);
+			} catch (final Exception e) {
+				resolver.reject(e);
+			}
+			
+			return DONE;
+		}
+		
+		private Integer exitValue() {
+			try {
+				return process.exitValue();
+			} catch (final IllegalThreadStateException e) {
+				return null;
+			}
+		}
+		
+		/**
+		 * Reads and delivers the output available without blocking.
+		 * 
+		 * @return {@code true} if there was any output
+		 */
+		private static boolean pump(final InputStream in, final ProcessOutputListener listener, final byte[] buffer)
+				throws Exception {
+			if (in == null) {
+				return false;
+			}
+			
+			final int available = in.available();
+			
+			if (available <= 0) {
+				return false;
+			}
+			
+			final int read = in.read(buffer, 0, Math.min(available, buffer.length));
+			
+			if (read <= 0) {
+				return false;
+			}
+			
+			listener.onOutput(buffer, 0, read);
+			return true;
+		}
+	}
+	
+	/**
+	 * Uses {@code Process.onExit()}. Kept in a separate class, so that the Java 8 types it refers to are only loaded
+	 * when it is available.
+	 */
+	private static final class OnExit {
+		private OnExit() { }
+		
+		private static void subscribe(final Process process, final Resolver<Integer> resolve)
+				throws IllegalAccessException, InvocationTargetException {
+			final CompletableFuture<?> future = (CompletableFuture<?>) ON_EXIT.invoke(process);
+			
+			future.whenComplete(new BiConsumer<Object, Throwable>() {
+				@Override
+				public void accept(final Object result, final Throwable exception) {
+					if (exception == null) {
+						resolve.resolve(process.exitValue());
+					} else if (exception instanceof CompletionException && exception.getCause() != null) {
+						resolve.reject(exception.getCause());
+					} else {
+						resolve.reject(exception);
+					}
+				}
+			});
+		}
+	}
+}
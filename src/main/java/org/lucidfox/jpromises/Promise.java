@@ -21,17 +21,23 @@
  */
 package org.lucidfox.jpromises;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Future;
 
 import org.lucidfox.jpromises.annotation.GwtCompatible;
-import org.lucidfox.jpromises.core.DeferredInvoker;
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+import org.lucidfox.jpromises.core.AsyncCallSiteException;
 import org.lucidfox.jpromises.core.PromiseHandler;
+import org.lucidfox.jpromises.core.PromiseInstrumentation;
+import org.lucidfox.jpromises.core.PromiseTracker;
 import org.lucidfox.jpromises.core.RejectCallback;
 import org.lucidfox.jpromises.core.ResolveCallback;
 import org.lucidfox.jpromises.core.Resolver;
 import org.lucidfox.jpromises.core.Thenable;
 import org.lucidfox.jpromises.core.ThrowingRunnable;
+import org.lucidfox.jpromises.core.UnhandledRejectionHandler;
 import org.lucidfox.jpromises.core.ValueRejectCallback;
 import org.lucidfox.jpromises.core.ValueResolveCallback;
 import org.lucidfox.jpromises.core.VoidRejectCallback;
@@ -75,48 +81,89 @@ import org.lucidfox.jpromises.core.VoidResolveCallback;
  */
 @GwtCompatible
 public final class Promise<V> implements Thenable<V> {
-	private enum State { PENDING, RESOLVED, REJECTED }
+	/**
+	 * The state of a promise.
+	 */
+	public enum State {
+		/**
+		 * The promise is neither resolved nor rejected yet.
+		 */
+		PENDING,
+		
+		/**
+		 * The promise is resolved with a value.
+		 */
+		RESOLVED,
+		
+		/**
+		 * The promise is rejected with an exception.
+		 */
+		REJECTED
+	}
+	
+	// Most promises have a single subscriber and are never contended, so the layout is kept compact: the promise
+	// synchronizes on itself ("the lock") instead of a separate lock object, the value and the exception share a
+	// field, the first subscriber is stored inline, only growing into an array when more are added, and state that
+	// few promises need lives in a side object allocated on first use.
+	private final PromiseFactory factory;
 	
-	private final DeferredInvoker deferredInvoker;
-	private final Queue<Deferred<V, ?>> deferreds = new LinkedList<>();
-	private final Object lock = new Object();
+	// Written under the lock, after the result, so that it can be read without the lock
+	private volatile State state = State.PENDING;
+	// The value if resolved, the exception if rejected
+	private Object result;
+	// Null, a single Deferred, or a Deferred[] filled from the start, with unused slots at the end
+	private Object deferreds;
+	// Null until one of its fields is needed
+	private Extras<V> extras;
+	private boolean handled;
+	// Set by the parent stage of a fused chain before settling this promise; see processValueDeferred
+	private boolean fuse;
 	
-	private State state = State.PENDING;
-	private V resolvedValue;
-	private Throwable rejectedException;
+	/* package */ Promise(final PromiseFactory factory, final PromiseHandler<V> handler) {
+		this(factory, handler, false);
+	}
+	
+	/**
+	 * Creates a lazy promise, whose handler is only started when the first callback or listener is registered.
+	 */
+	/* package */ Promise(final PromiseFactory factory, final PromiseHandler<V> handler, final boolean lazy) {
+		this.factory = factory;
+		
+		if (lazy) {
+			extras = new Extras<>();
+			extras.lazyHandler = handler;
+		} else {
+			start(handler);
+		}
+	}
 	
-	/* package */ Promise(final DeferredInvoker deferredInvoker, final PromiseHandler<V> handler) {
-		this.deferredInvoker = deferredInvoker;
+	private void start(final PromiseHandler<V> handler) {
+		final PromiseInstrumentation instrumentation = factory.getInstrumentation();
+		final PromiseTracker tracker = factory.getPromiseTracker();
+		final Resolver<V> resolver;
+		
+		if (instrumentation == null && tracker == null) {
+			resolver = new PromiseResolver();
+		} else {
+			final ObservedResolver observedResolver = new ObservedResolver(instrumentation,
+					instrumentation == null ? 0 : instrumentation.promiseCreated(), tracker);
+			
+			if (tracker != null) {
+				observedResolver.trackerToken = tracker.promiseCreated(this, observedResolver);
+			}
+			
+			resolver = observedResolver;
+		}
 		
 		try {
-			handler.handle(new Resolver<V>() {
-				@Override
-				public void resolve(final V value) {
-					Promise.this.resolve(value);
-				}
-
-				@Override
-				public void deferResolve(final Thenable<? extends V> thenable) {
-					Promise.this.deferResolve(thenable);
-				}
-
-				@Override
-				public void reject(final Throwable exception) {
-					Promise.this.reject(exception);
-				}
-				
-				@Override
-				public Promise<V> getPromise() {
-					return Promise.this;
-				}
-			});
+			handler.handle(resolver);
 		} catch (final Exception e) {
-			reject(e);
+			resolver.reject(e);
 		}
 	}
 	
-	/* package */ Promise(final DeferredInvoker deferredInvoker, final V value) {
-		this(deferredInvoker, new PromiseHandler<V>() {
+	/* package */ Promise(final PromiseFactory factory, final V value) {
+		this(factory, new PromiseHandler<V>() {
 			@Override
 			public void handle(final Resolver<V> resolve) {
 				resolve.resolve(value);
@@ -125,26 +172,48 @@ public final class Promise<V> implements Thenable<V> {
 	}
 	
 	private void resolve(final V value) {
-		synchronized (lock) {
-			if (state != State.PENDING) {
-				throw new IllegalStateException("Promise state already defined.");
+		final List<SettleListener<? super V>> listeners;
+		
+		if (factory.isConfinedCall()) {
+			listeners = resolveLocked(value);
+		} else {
+			synchronized (this) {
+				listeners = resolveLocked(value);
 			}
-			
-			if (value == this) {
-				throw new IllegalStateException("A promise cannot be resolved with itself.");
+		}
+		
+		if (listeners != null) {
+			for (final SettleListener<? super V> listener: listeners) {
+				listener.onResolve(value);
 			}
-			
-			state = State.RESOLVED;
-			resolvedValue = value;
-			scheduleProcessDeferred();
 		}
 	}
 	
-	private void deferResolve(final Thenable<? extends V> thenable) {
-		synchronized (lock) {
-			if (state != State.PENDING) {
-				throw new IllegalStateException("Promise state already defined.");
-			}
+	/**
+	 * Settles this promise with a value. Must be called while holding the lock, unless the factory is thread-confined.
+	 *
+	 * @return the settle listeners to notify outside the lock
+	 */
+	private List<SettleListener<? super V>> resolveLocked(final V value) {
+		if (state != State.PENDING) {
+			throw new IllegalStateException("Promise state already defined.");
+		}
+		
+		if (value == this) {
+			throw new IllegalStateException("A promise cannot be resolved with itself.");
+		}
+		
+		result = value;
+		state = State.RESOLVED;
+		final List<SettleListener<? super V>> listeners = takeSettleListeners();
+		scheduleProcessDeferredUnlessFused();
+		return listeners;
+	}
+	
+	private void deferResolve(final Thenable<? extends V> thenable, final Resolver<V> resolver) {
+		// A volatile read is enough for this sanity check
+		if (state != State.PENDING) {
+			throw new IllegalStateException("Promise state already defined.");
 		}
 		
 		if (thenable == this) {
@@ -157,33 +226,238 @@ public final class Promise<V> implements Thenable<V> {
 			thenable.then(new ResolveCallback<V, Object>() {
 				@Override
 				public Promise<Object> onResolve(final V value) {
-					resolve(value);
+					resolver.resolve(value);
 					return null;
 				}
 			}, new RejectCallback<Object>() {
 				@Override
 				public Promise<Object> onReject(final Throwable exception) {
-					reject(exception);
-					return null;
+					resolver.reject(exception);
+					// Not null, which would reject the (otherwise unused) chained promise and report it as unhandled
+					return new Promise<>(factory, (Object) null);
 				}
 			});
 		} catch (final Exception e) {
-			reject(e);
+			resolver.reject(e);
 		}
 	}
 	
 	private void reject(final Throwable exception) {
-		synchronized (lock) {
-			if (state != State.PENDING) {
-				throw new IllegalStateException("Promise state already defined.");
+		final List<SettleListener<? super V>> listeners;
+		
+		if (factory.isConfinedCall()) {
+			listeners = rejectLocked(exception);
+		} else {
+			synchronized (this) {
+				listeners = rejectLocked(exception);
+			}
+		}
+		
+		if (listeners != null) {
+			for (final SettleListener<? super V> listener: listeners) {
+				listener.onReject(exception);
+			}
+		}
+	}
+	
+	/**
+	 * Settles this promise with an exception. Must be called while holding the lock, unless the factory is
+	 * thread-confined.
+	 *
+	 * @return the settle listeners to notify outside the lock
+	 */
+	private List<SettleListener<? super V>> rejectLocked(final Throwable exception) {
+		if (state != State.PENDING) {
+			throw new IllegalStateException("Promise state already defined.");
+		}
+		
+		result = exception;
+		state = State.REJECTED;
+		final List<SettleListener<? super V>> listeners = takeSettleListeners();
+		
+		final UnhandledRejectionHandler unhandledRejectionHandler = factory.getUnhandledRejectionHandler();
+		
+		if (unhandledRejectionHandler == null || handled) {
+			scheduleProcessDeferredUnlessFused();
+		} else {
+			scheduleProcessUnhandled(unhandledRejectionHandler);
+		}
+		
+		return listeners;
+	}
+	
+	/**
+	 * Registers a listener that is notified synchronously, in the thread that settles this promise, bypassing
+	 * the deferred invoker. If the promise is already settled, the listener is notified immediately in the calling
+	 * thread. This is intended for bridges to other future implementations that dispatch their own callbacks.
+	 *
+	 * @param listener the listener to notify
+	 */
+	/* package */ void addSettleListener(final SettleListener<? super V> listener) {
+		final State currentState;
+		final PromiseHandler<V> handlerToStart;
+		
+		if (factory.isConfinedCall()) {
+			currentState = state;
+			handlerToStart = addSettleListenerLocked(listener);
+		} else {
+			synchronized (this) {
+				currentState = state;
+				handlerToStart = addSettleListenerLocked(listener);
 			}
-			
-			state = State.REJECTED;
-			rejectedException = exception;
-			scheduleProcessDeferred();
 		}
+		
+		if (handlerToStart != null) {
+			start(handlerToStart);
+		}
+		
+		if (currentState == State.PENDING) {
+			return;
+		}
+		
+		if (currentState == State.RESOLVED) {
+			listener.onResolve(resolvedValue());
+		} else {
+			listener.onReject(rejectedException());
+		}
+	}
+	
+	/**
+	 * Registers the listener if this promise is still pending. Must be called while holding the lock, unless the
+	 * factory is thread-confined.
+	 *
+	 * @return the handler of a lazy promise to start outside the lock, if any
+	 */
+	private PromiseHandler<V> addSettleListenerLocked(final SettleListener<? super V> listener) {
+		handled = true;
+		
+		if (state != State.PENDING) {
+			return null;
+		}
+		
+		final Extras<V> currentExtras = extras();
+		
+		if (currentExtras.settleListeners == null) {
+			currentExtras.settleListeners = new ArrayList<>(1);
+		}
+		
+		currentExtras.settleListeners.add(listener);
+		return takeLazyHandler();
+	}
+	
+	/**
+	 * Takes the settle listeners to notify once this promise is settled. Must be called while holding the lock,
+	 * unless the factory is thread-confined.
+	 */
+	private List<SettleListener<? super V>> takeSettleListeners() {
+		if (extras == null) {
+			return null;
+		}
+		
+		final List<SettleListener<? super V>> listeners = extras.settleListeners;
+		extras.settleListeners = null;
+		return listeners;
+	}
+	
+	/**
+	 * Takes the handler of a lazy promise that has not been started yet, so that the caller can start it outside
+	 * the lock. Only one caller gets the handler. Must be called while holding the lock, unless the factory is
+	 * thread-confined.
+	 */
+	private PromiseHandler<V> takeLazyHandler() {
+		if (extras == null) {
+			return null;
+		}
+		
+		final PromiseHandler<V> handler = extras.lazyHandler;
+		extras.lazyHandler = null;
+		return handler;
+	}
+	
+	/**
+	 * Returns the side object, allocating it if needed. Must be called while holding the lock, unless the factory
+	 * is thread-confined.
+	 */
+	private Extras<V> extras() {
+		if (extras == null) {
+			extras = new Extras<>();
+		}
+		
+		return extras;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private V resolvedValue() {
+		return (V) result;
+	}
+	
+	private Throwable rejectedException() {
+		return (Throwable) result;
+	}
+	
+	/* package */ PromiseFactory getFactory() {
+		return factory;
+	}
+	
+	// The source future may be cancelled from any thread, so these always take the lock, even when thread-confined
+	@GwtIncompatible("java.util.concurrent.Future")
+	/* package */ synchronized Future<?> getSourceFuture() {
+		return extras == null ? null : extras.sourceFuture;
+	}
+	
+	@GwtIncompatible("java.util.concurrent.Future")
+	/* package */ synchronized void setSourceFuture(final Future<?> sourceFuture) {
+		extras().sourceFuture = sourceFuture;
 	}
 
+	/**
+	 * <p>
+	 * Returns the current state of this promise.
+	 * </p><p>
+	 * This is a single volatile read and never blocks. Note that it does not start a lazy promise, which stays
+	 * {@link State#PENDING} until something subscribes to it.
+	 * </p>
+	 *
+	 * @return the current state of this promise
+	 */
+	public State getState() {
+		return state;
+	}
+	
+	/**
+	 * Returns whether this promise is already resolved or rejected. Like {@link #getState()}, this never blocks.
+	 *
+	 * @return {@code true} if this promise is settled, {@code false} if it is still pending
+	 */
+	public boolean isDone() {
+		return state != State.PENDING;
+	}
+	
+	/**
+	 * Returns the value of this promise if it is already resolved, or {@code valueIfAbsent} if it is pending or
+	 * rejected. This method never blocks and does not start a lazy promise.
+	 *
+	 * @param valueIfAbsent the value to return if this promise is not resolved
+	 * @return the value of this promise, or {@code valueIfAbsent}
+	 */
+	public V getNow(final V valueIfAbsent) {
+		return state == State.RESOLVED ? resolvedValue() : valueIfAbsent;
+	}
+	
+	/**
+	 * Returns the exception this promise was rejected with, or {@code null} if it is pending or resolved.
+	 * This method never blocks and does not start a lazy promise.
+	 * <p>
+	 * Reading the exception this way does not count as handling the rejection, so the factory's
+	 * {@link UnhandledRejectionHandler} is still notified if no callbacks are registered.
+	 * </p>
+	 *
+	 * @return the rejection reason of this promise, or {@code null}
+	 */
+	public Throwable getExceptionNow() {
+		return state == State.REJECTED ? rejectedException() : null;
+	}
+	
 	/**
 	 * <p>
 	 * Returns a new {@code Promise} that, after this promise is resolved or rejected,
@@ -214,27 +488,95 @@ public final class Promise<V> implements Thenable<V> {
 		final Deferred<V, R> deferred = new Deferred<>();
 		deferred.resolveCallback = onResolve;
 		deferred.rejectCallback = onReject;
+		return subscribe(deferred);
+	}
+	
+	private <R> Promise<R> subscribe(final Deferred<V, R> deferred) {
+		deferred.callSite = factory.sampleCallSite();
+		deferred.context = factory.captureContext();
 		
-		final Promise<R> result = new Promise<>(deferredInvoker, new PromiseHandler<R>() {
+		final Promise<R> result = new Promise<>(factory, new PromiseHandler<R>() {
 			@Override
 			public void handle(final Resolver<R> resolve) {
 				deferred.thenResolver = resolve;
 			}
 		});
 		
-		synchronized (lock) {
-			deferreds.add(deferred);
+		addDeferred(deferred);
+		
+		return result;
+	}
+	
+	private void addDeferred(final Deferred<V, ?> deferred) {
+		final PromiseHandler<V> handlerToStart;
+		
+		if (factory.isConfinedCall()) {
+			handlerToStart = addDeferredLocked(deferred);
+		} else {
+			synchronized (this) {
+				handlerToStart = addDeferredLocked(deferred);
+			}
+		}
+		
+		if (handlerToStart != null) {
+			start(handlerToStart);
+		}
+	}
+	
+	/**
+	 * Registers a subscriber, scheduling it right away if this promise is already settled. Must be called while
+	 * holding the lock, unless the factory is thread-confined.
+	 *
+	 * @return the handler of a lazy promise to start outside the lock, if any
+	 */
+	private PromiseHandler<V> addDeferredLocked(final Deferred<V, ?> deferred) {
+		if (deferreds == null) {
+			deferreds = deferred;
+		} else if (deferreds instanceof Deferred) {
+			deferreds = new Deferred<?, ?>[] { (Deferred<?, ?>) deferreds, deferred, null, null };
+		} else {
+			Deferred<?, ?>[] array = (Deferred<?, ?>[]) deferreds;
+			final int size = size(array);
 			
-			if (state != State.PENDING) {
-				scheduleProcessDeferred();
+			if (size == array.length) {
+				array = Arrays.copyOf(array, size * 2);
+				deferreds = array;
 			}
+			
+			array[size] = deferred;
 		}
 		
-		return result;
+		handled = true;
+		
+		if (state != State.PENDING) {
+			scheduleProcessDeferred();
+		}
+		
+		return takeLazyHandler();
+	}
+	
+	/**
+	 * Returns the number of subscribers in an array of subscribers, which are stored from the start.
+	 */
+	private static int size(final Deferred<?, ?>[] array) {
+		int low = 0;
+		int high = array.length;
+		
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			
+			if (array[middle] == null) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		
+		return low;
 	}
 	
 	private void scheduleProcessDeferred() {
-		deferredInvoker.invokeDeferred(new Runnable() {
+		factory.invokeDeferred(new Runnable() {
 			@Override
 			public void run() {
 				processDeferred();
@@ -242,31 +584,136 @@ public final class Promise<V> implements Thenable<V> {
 		});
 	}
 	
-	private <R> void processDeferred() {
-		assert state == State.RESOLVED || state == State.REJECTED;
+	/**
+	 * Schedules the callbacks after this promise is settled, unless this promise is a stage of a fused chain with
+	 * at most one synchronous subscriber, in which case the parent stage runs it in its own dispatch. Must be called
+	 * while holding the lock.
+	 */
+	private void scheduleProcessDeferredUnlessFused() {
+		if (fuse && (deferreds == null || deferreds instanceof Deferred && isFusable((Deferred<?, ?>) deferreds))) {
+			return;
+		}
 		
-		while (true) {
-			final Deferred<V, R> deferred;
-			
-			synchronized (lock) {
-				if (deferreds.isEmpty()) {
-					return;
+		fuse = false;
+		scheduleProcessDeferred();
+	}
+	
+	/**
+	 * Returns whether the callbacks of the given subscriber are known to complete synchronously, so that running
+	 * them in the same dispatch as the previous stage cannot delay anything else.
+	 */
+	private static boolean isFusable(final Deferred<?, ?> deferred) {
+		return deferred instanceof ValueDeferred || deferred instanceof TerminalDeferred;
+	}
+	
+	private void scheduleProcessUnhandled(final UnhandledRejectionHandler unhandledRejectionHandler) {
+		factory.invokeDeferred(new Runnable() {
+			@Override
+			public void run() {
+				final boolean unhandled;
+				
+				if (factory.isConfinedCall()) {
+					unhandled = !handled;
+				} else {
+					synchronized (Promise.this) {
+						unhandled = !handled;
+					}
 				}
 				
-				@SuppressWarnings("unchecked")
-				final Deferred<V, R> tmp = (Deferred<V, R>) deferreds.remove();
-				deferred = tmp;
+				processDeferred();
+				
+				if (unhandled) {
+					unhandledRejectionHandler.onUnhandledRejection(Promise.this, rejectedException());
+				}
+			}
+		});
+	}
+	
+	private void processDeferred() {
+		// Fused stages are run iteratively, so long chains do not grow the stack
+		Promise<?> promise = this;
+		
+		while (promise != null) {
+			promise = promise.drainDeferred();
+		}
+	}
+	
+	/**
+	 * Runs the callbacks registered so far and returns the next stage of a fused chain to run in the same
+	 * dispatch, if any. Subscribers added while this runs schedule their own dispatch, since the promise is settled.
+	 */
+	private Promise<?> drainDeferred() {
+		assert state == State.RESOLVED || state == State.REJECTED;
+		
+		final Object batch;
+		
+		if (factory.isConfinedCall()) {
+			batch = deferreds;
+			deferreds = null;
+		} else {
+			synchronized (this) {
+				batch = deferreds;
+				deferreds = null;
+			}
+		}
+		
+		if (batch == null) {
+			return null;
+		}
+		
+		if (batch instanceof Deferred) {
+			@SuppressWarnings("unchecked")
+			final Deferred<V, ?> deferred = (Deferred<V, ?>) batch;
+			return processDeferred(deferred);
+		}
+		
+		Promise<?> fusedChild = null;
+		
+		for (final Deferred<?, ?> element: (Deferred<?, ?>[]) batch) {
+			if (element == null) {
+				break;
 			}
 			
-			Thenable<? extends R> next = null;
-			Throwable exceptionInCallback = null;
+			@SuppressWarnings("unchecked")
+			final Deferred<V, ?> deferred = (Deferred<V, ?>) element;
+			final Promise<?> child = processDeferred(deferred);
 			
-			if (state == State.RESOLVED) {
+			if (child != null) {
+				// Only the last fused child is left to the caller; earlier ones are run now to keep them in order
+				if (fusedChild != null) {
+					fusedChild.processDeferred();
+				}
+				
+				fusedChild = child;
+			}
+		}
+		
+		return fusedChild;
+	}
+	
+	private <R> Promise<R> processDeferred(final Deferred<V, R> deferred) {
+		if (deferred instanceof ValueDeferred) {
+			return processValueDeferred((ValueDeferred<V, R>) deferred);
+		}
+		
+		Thenable<? extends R> next = null;
+		Throwable exceptionInCallback = null;
+		
+		final Object[] previousContext = deferred.context == null ? null : deferred.context.restore();
+		final PromiseInstrumentation instrumentation = factory.getInstrumentation();
+		final long callbackToken = instrumentation == null ? 0 : instrumentation.callbackStarted();
+		
+		try {
+			if (deferred instanceof TerminalDeferred) {
+				@SuppressWarnings("unchecked")
+				final TerminalDeferred<V> terminal = (TerminalDeferred<V>) deferred;
+				exceptionInCallback = runTerminal(terminal);
+			} else if (state == State.RESOLVED) {
 				if (deferred.resolveCallback == null) {
 					next = null;
 				} else {
 					try {
-						next = deferred.resolveCallback.onResolve(resolvedValue);
+						next = deferred.resolveCallback.onResolve(resolvedValue());
 					} catch (final Exception e) {
 						exceptionInCallback = e;
 					}
@@ -276,7 +723,7 @@ public final class Promise<V> implements Thenable<V> {
 					next = null;
 				} else {
 					try {
-						next = deferred.rejectCallback.onReject(rejectedException);
+						next = deferred.rejectCallback.onReject(rejectedException());
 					} catch (final Error e) {
 						throw e;
 					} catch (final Throwable e) {
@@ -286,34 +733,159 @@ public final class Promise<V> implements Thenable<V> {
 			} else {
 				throw new AssertionError(); // Cannot be called from a PENDING state
 			}
+		} finally {
+			if (instrumentation != null) {
+				instrumentation.callbackFinished(callbackToken);
+			}
 			
-			if (next == null) {
-				if (exceptionInCallback != null) {
-					deferred.thenResolver.reject(exceptionInCallback);
-				} else if (state == State.RESOLVED) {
-					deferred.thenResolver.resolve(null);
-				} else {
-					deferred.thenResolver.reject(rejectedException);
+			if (previousContext != null) {
+				deferred.context.reset(previousContext);
+			}
+		}
+		
+		if (exceptionInCallback != null && deferred.callSite != null) {
+			exceptionInCallback.addSuppressed(deferred.callSite);
+		}
+		
+		if (deferred instanceof TerminalDeferred) {
+			// No promise to pass the outcome to; report the exceptions that a child promise would have rejected with
+			if (exceptionInCallback != null) {
+				reportUnhandled(exceptionInCallback);
+			} else if (state == State.REJECTED && ((TerminalDeferred<?>) deferred).onReject == null) {
+				reportUnhandled(rejectedException());
+			}
+			
+			return null;
+		}
+		
+		if (next == null) {
+			if (exceptionInCallback != null) {
+				deferred.thenResolver.reject(exceptionInCallback);
+			} else if (state == State.RESOLVED) {
+				deferred.thenResolver.resolve(null);
+			} else {
+				deferred.thenResolver.reject(rejectedException());
+			}
+		} else {
+			try {
+				next.then(new ResolveCallback<R, Void>() {
+					@Override
+					public Promise<Void> onResolve(final R value) {
+						deferred.thenResolver.resolve(value);
+						return null;
+					}
+				}, new RejectCallback<Void>() {
+					@Override
+					public Promise<Void> onReject(final Throwable exception) {
+						deferred.thenResolver.reject(exception);
+						return new Promise<>(factory, (Void) null);
+					}
+				});
+			} catch (final Exception e) {
+				deferred.thenResolver.reject(e);
+			}
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Runs a {@code thenApply} or {@code thenAccept} subscriber. Since its callbacks return plain values, the chained
+	 * promise is settled directly, without the extra hop through an already resolved promise that a thenable would
+	 * need. If the chained promise in turn has a single such subscriber, it is returned so that the caller can run
+	 * it in the same dispatch; as soon as an intermediate promise has a second subscriber, it falls back to
+	 * scheduling its callbacks through the deferred invoker as usual.
+	 */
+	private <R> Promise<R> processValueDeferred(final ValueDeferred<V, R> valueDeferred) {
+		final Deferred<V, R> deferred = valueDeferred;
+		R value = null;
+		Throwable exception = null;
+		
+		final Object[] previousContext = deferred.context == null ? null : deferred.context.restore();
+		final PromiseInstrumentation instrumentation = factory.getInstrumentation();
+		final long callbackToken = instrumentation == null ? 0 : instrumentation.callbackStarted();
+		
+		try {
+			if (state == State.RESOLVED) {
+				if (valueDeferred.onValue != null) {
+					value = valueDeferred.onValue.onResolve(resolvedValue());
 				}
+			} else if (valueDeferred.onValueReject != null) {
+				value = valueDeferred.onValueReject.onReject(rejectedException());
 			} else {
-				try {
-					next.then(new ResolveCallback<R, Void>() {
-						@Override
-						public Promise<Void> onResolve(final R value) {
-							deferred.thenResolver.resolve(value);
-							return null;
-						}
-					}, new RejectCallback<Void>() {
-						@Override
-						public Promise<Void> onReject(final Throwable exception) {
-							deferred.thenResolver.reject(exception);
-							return null;
-						}
-					});
-				} catch (final Exception e) {
-					deferred.thenResolver.reject(e);
+				exception = rejectedException();
+			}
+		} catch (final Error e) {
+			throw e;
+		} catch (final Throwable e) {
+			exception = e;
+			
+			if (deferred.callSite != null) {
+				exception.addSuppressed(deferred.callSite);
+			}
+		} finally {
+			if (instrumentation != null) {
+				instrumentation.callbackFinished(callbackToken);
+			}
+			
+			if (previousContext != null) {
+				deferred.context.reset(previousContext);
+			}
+		}
+		
+		final Promise<R> child = deferred.thenResolver.getPromise();
+		
+		child.setFuse(true);
+		
+		if (exception != null) {
+			deferred.thenResolver.reject(exception);
+		} else {
+			deferred.thenResolver.resolve(value);
+		}
+		
+		return child.setFuse(false) ? child : null;
+	}
+	
+	/**
+	 * Sets the fuse flag, returning its previous value.
+	 */
+	private boolean setFuse(final boolean value) {
+		if (factory.isConfinedCall()) {
+			final boolean previous = fuse;
+			fuse = value;
+			return previous;
+		}
+		
+		synchronized (this) {
+			final boolean previous = fuse;
+			fuse = value;
+			return previous;
+		}
+	}
+	
+	private Throwable runTerminal(final TerminalDeferred<V> deferred) {
+		try {
+			if (state == State.RESOLVED) {
+				if (deferred.onResolve != null) {
+					deferred.onResolve.onResolve(resolvedValue());
 				}
+			} else if (deferred.onReject != null) {
+				deferred.onReject.onReject(rejectedException());
 			}
+			
+			return null;
+		} catch (final Error e) {
+			throw e;
+		} catch (final Throwable e) {
+			return e;
+		}
+	}
+	
+	private void reportUnhandled(final Throwable exception) {
+		final UnhandledRejectionHandler unhandledRejectionHandler = factory.getUnhandledRejectionHandler();
+		
+		if (unhandledRejectionHandler != null) {
+			unhandledRejectionHandler.onUnhandledRejection(this, exception);
 		}
 	}
 	
@@ -329,6 +901,67 @@ public final class Promise<V> implements Thenable<V> {
 		return then(onResolve, null);
 	}
 	
+	/**
+	 * <p>
+	 * Same as {@link #then(ResolveCallback, RejectCallback)}, except that if this promise is already settled, the
+	 * matching callback is called immediately in the current thread instead of through the factory's deferred
+	 * invoker.
+	 * </p><p>
+	 * This deliberately breaks the Promises/A+ guarantee that callbacks never run before {@code then} returns,
+	 * and callbacks registered earlier with {@code then} that are still waiting for the deferred invoker run after
+	 * the ones passed here. It is meant for hot paths that often find the promise already resolved, such as cache
+	 * lookups, and can skip the round trip through the event loop or executor. If this promise is still pending,
+	 * this method behaves exactly like {@code then}.
+	 * </p>
+	 *
+	 * @param <R> the value type of the result promise
+	 * @param onResolve the resolve callback (optional)
+	 * @param onReject the reject callback (optional)
+	 * @return a {@link Promise} that is chained after the current promise
+	 */
+	public <R> Promise<R> thenSyncIfSettled(final ResolveCallback<? super V, ? extends R> onResolve,
+			final RejectCallback<? extends R> onReject) {
+		if (state == State.PENDING) {
+			return then(onResolve, onReject);
+		}
+		
+		// Runs in the current thread, so there is no context to capture and restore
+		final Deferred<V, R> deferred = new Deferred<>();
+		deferred.resolveCallback = onResolve;
+		deferred.rejectCallback = onReject;
+		deferred.callSite = factory.sampleCallSite();
+		
+		final Promise<R> result = new Promise<>(factory, new PromiseHandler<R>() {
+			@Override
+			public void handle(final Resolver<R> resolve) {
+				deferred.thenResolver = resolve;
+			}
+		});
+		
+		if (factory.isConfinedCall()) {
+			handled = true;
+		} else {
+			synchronized (this) {
+				handled = true;
+			}
+		}
+		
+		processDeferred(deferred);
+		return result;
+	}
+	
+	/**
+	 * Calls {@code thenSyncIfSettled(onResolve, null)}.
+	 * 
+	 * @param <R> the value type of the result promise
+	 * @see #thenSyncIfSettled(ResolveCallback,RejectCallback)
+	 * @param onResolve the resolve callback (optional)
+	 * @return a {@link Promise} that is chained after the current promise
+	 */
+	public <R> Promise<R> thenSyncIfSettled(final ResolveCallback<? super V, ? extends R> onResolve) {
+		return thenSyncIfSettled(onResolve, null);
+	}
+	
 	/**
 	 * Same as {@link #then(ResolveCallback, RejectCallback)}. This method is provided for users used to the
 	 * {@code CompletableFuture} API.
@@ -382,6 +1015,11 @@ public final class Promise<V> implements Thenable<V> {
 	 * instead of a promise.
 	 * </p>
 	 * <p>
+	 * Since the callbacks complete synchronously, a chain of {@code thenApply} and {@code thenAccept} calls whose
+	 * intermediate promises have no other subscribers runs in a single dispatch of the deferred invoker once the
+	 * first promise is settled. Callbacks are still never called before the method registering them returns.
+	 * </p>
+	 * <p>
 	 * This implementation throws no exceptions. Any exception thrown during execution of {@code onResolve} or
 	 * {@code onReject} causes the resulting promise to be rejected with that exception.
 	 * </p>
@@ -394,17 +1032,7 @@ public final class Promise<V> implements Thenable<V> {
 	 */
 	public <R> Promise<R> thenApply(final ValueResolveCallback<? super V, ? extends R> onResolve,
 			final ValueRejectCallback<? extends R> onReject) {
-		return then(onResolve == null ? null : new ResolveCallback<V, R>() {
-			@Override
-			public Thenable<R> onResolve(final V value) throws Exception {
-				return new Promise<R>(deferredInvoker, onResolve.onResolve(value));
-			}
-		}, onReject == null ? null : new RejectCallback<R>() {
-			@Override
-			public Thenable<R> onReject(final Throwable exception) throws Throwable {
-				return new Promise<R>(deferredInvoker, onReject.onReject(exception));
-			}
-		});
+		return subscribe(new ValueDeferred<V, R>(onResolve, onReject));
 	}
 	
 	/**
@@ -451,19 +1079,19 @@ public final class Promise<V> implements Thenable<V> {
 	 * @return a {@link Promise} that is chained after the current promise
 	 */
 	public Promise<Void> thenAccept(final VoidResolveCallback<? super V> onResolve, final VoidRejectCallback onReject) {
-		return then(onResolve == null ? null : new ResolveCallback<V, Void>() {
+		return subscribe(new ValueDeferred<V, Void>(onResolve == null ? null : new ValueResolveCallback<V, Void>() {
 			@Override
-			public Thenable<Void> onResolve(final V value) throws Exception {
+			public Void onResolve(final V value) throws Exception {
 				onResolve.onResolve(value);
 				return null;
 			}
-		}, onReject == null ? null : new RejectCallback<Void>() {
+		}, onReject == null ? null : new ValueRejectCallback<Void>() {
 			@Override
-			public Thenable<Void> onReject(final Throwable exception) throws Throwable {
+			public Void onReject(final Throwable exception) throws Throwable {
 				onReject.onReject(exception);
 				return null;
 			}
-		});
+		}));
 	}
 	
 	/**
@@ -502,7 +1130,8 @@ public final class Promise<V> implements Thenable<V> {
 			@Override
 			public Thenable<Void> onReject(final Throwable exception) throws Throwable {
 				onReject.onReject(exception);
-				return null;
+				// Returning null would reject the resulting promise with the same exception
+				return new Promise<Void>(factory, (Void) null);
 			}
 		});
 	}
@@ -531,15 +1160,27 @@ public final class Promise<V> implements Thenable<V> {
 	}
 	
 	/**
+	 * <p>
 	 * Same as {@link #thenAccept(VoidResolveCallback,VoidRejectCallback)}, but does not return a value, preventing
 	 * any further additions to the then-chain after this promise.
+	 * </p><p>
+	 * Since there is no chained promise, the callbacks are registered as a single terminal subscriber, without
+	 * allocating a child promise and its resolver. Exceptions that would have rejected the chained promise returned
+	 * by {@code thenAccept} - an exception thrown by either callback, or the rejection reason of this promise if
+	 * {@code onReject} is {@code null} - are passed to the factory's {@link UnhandledRejectionHandler}, if any,
+	 * together with this promise.
+	 * </p>
 	 * 
 	 * @see #thenAccept(VoidResolveCallback,VoidRejectCallback)
 	 * @param onResolve the resolve callback (optional)
 	 * @param onReject the reject callback (optional)
 	 */
 	public void done(final VoidResolveCallback<? super V> onResolve, final VoidRejectCallback onReject) {
-		thenAccept(onResolve, onReject);
+		final Deferred<V, Void> deferred = new TerminalDeferred<>(onResolve, onReject);
+		deferred.callSite = factory.sampleCallSite();
+		deferred.context = factory.captureContext();
+		
+		addDeferred(deferred);
 	}
 	
 	/**
@@ -564,8 +1205,8 @@ public final class Promise<V> implements Thenable<V> {
 	 * <li>{@code Promise (rejected, exception = java.lang.ArithmeticException: / by zero)}</li>
 	 * </ul>
 	 * 
-	 * <p>The state of the promise is, at this time, intentionally not exposed via the public API, though it may be
-	 * in the future. Do not parse the output of this method to find the promise state programmatically.</p>
+	 * <p>Do not parse the output of this method to find the promise state programmatically; use
+	 * {@link #getState()}, {@link #getNow(Object)} and {@link #getExceptionNow()} instead.</p>
 	 */
 	@Override
 	public String toString() {
@@ -573,18 +1214,136 @@ public final class Promise<V> implements Thenable<V> {
 		case PENDING:
 			return "Promise (pending)";
 		case RESOLVED:
-			return "Promise (resolved, value = " + resolvedValue + ")";
+			return "Promise (resolved, value = " + resolvedValue() + ")";
 		case REJECTED:
-			return "Promise (rejected, value = " + rejectedException + ")";
+			return "Promise (rejected, value = " + rejectedException() + ")";
 		default:
 			// Cannot happen
 			throw new AssertionError();
 		}
 	}
 	
+	/**
+	 * The resolver passed to the promise handler. All state changes of the promise go through its resolver.
+	 */
+	private class PromiseResolver implements Resolver<V> {
+		@Override
+		public void resolve(final V value) {
+			Promise.this.resolve(value);
+		}
+
+		@Override
+		public void deferResolve(final Thenable<? extends V> thenable) {
+			Promise.this.deferResolve(thenable, this);
+		}
+
+		@Override
+		public void reject(final Throwable exception) {
+			Promise.this.reject(exception);
+		}
+		
+		@Override
+		public Promise<V> getPromise() {
+			return Promise.this;
+		}
+	}
+	
+	/**
+	 * A resolver that additionally reports settlement to the factory's {@link PromiseInstrumentation} and/or
+	 * {@link PromiseTracker}. The tokens returned when the promise was created are kept here rather than in
+	 * the promise itself, so unobserved promises pay nothing for them.
+	 */
+	private final class ObservedResolver extends PromiseResolver {
+		private final PromiseInstrumentation instrumentation;
+		private final long instrumentationToken;
+		private final PromiseTracker tracker;
+		private Object trackerToken;
+		
+		private ObservedResolver(final PromiseInstrumentation instrumentation, final long instrumentationToken,
+				final PromiseTracker tracker) {
+			this.instrumentation = instrumentation;
+			this.instrumentationToken = instrumentationToken;
+			this.tracker = tracker;
+		}
+		
+		@Override
+		public void resolve(final V value) {
+			super.resolve(value);
+			settled(true);
+		}
+		
+		@Override
+		public void reject(final Throwable exception) {
+			super.reject(exception);
+			settled(false);
+		}
+		
+		private void settled(final boolean resolved) {
+			if (instrumentation != null) {
+				instrumentation.promiseSettled(instrumentationToken, resolved);
+			}
+			
+			if (tracker != null) {
+				tracker.promiseSettled(trackerToken);
+			}
+		}
+	}
+	
+	/**
+	 * Listener notified synchronously when a promise is settled.
+	 *
+	 * @param <V> the value type of the promise
+	 */
+	/* package */ interface SettleListener<V> {
+		void onResolve(V value);
+		
+		void onReject(Throwable exception);
+	}
+	
+	/**
+	 * State that few promises need, kept out of the promise itself to keep it small.
+	 */
+	private static final class Extras<V> {
+		private List<SettleListener<? super V>> settleListeners;
+		// The handler of a lazy promise that has not been started yet
+		private PromiseHandler<V> lazyHandler;
+		
+		@GwtIncompatible("java.util.concurrent.Future")
+		private Future<?> sourceFuture;
+	}
+	
 	private static class Deferred<V, R> {
 		private ResolveCallback<? super V, ? extends R> resolveCallback;
 		private RejectCallback<? extends R> rejectCallback;
 		private Resolver<R> thenResolver;
+		private AsyncCallSiteException callSite;
+		private ContextSnapshot context;
+	}
+	
+	/**
+	 * A subscriber registered by {@code thenApply} or {@code thenAccept}, whose callbacks return plain values.
+	 */
+	private static final class ValueDeferred<V, R> extends Deferred<V, R> {
+		private final ValueResolveCallback<? super V, ? extends R> onValue;
+		private final ValueRejectCallback<? extends R> onValueReject;
+		
+		private ValueDeferred(final ValueResolveCallback<? super V, ? extends R> onValue,
+				final ValueRejectCallback<? extends R> onValueReject) {
+			this.onValue = onValue;
+			this.onValueReject = onValueReject;
+		}
+	}
+	
+	/**
+	 * A subscriber registered by {@code done}, with no chained promise.
+	 */
+	private static final class TerminalDeferred<V> extends Deferred<V, Void> {
+		private final VoidResolveCallback<? super V> onResolve;
+		private final VoidRejectCallback onReject;
+		
+		private TerminalDeferred(final VoidResolveCallback<? super V> onResolve, final VoidRejectCallback onReject) {
+			this.onResolve = onResolve;
+			this.onReject = onReject;
+		}
 	}
 }
@@ -25,17 +25,33 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.lucidfox.jpromises.annotation.GwtCompatible;
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+import org.lucidfox.jpromises.core.AsyncCallSiteException;
 import org.lucidfox.jpromises.core.AsyncRunner;
+import org.lucidfox.jpromises.core.Combiner2;
+import org.lucidfox.jpromises.core.Combiner3;
+import org.lucidfox.jpromises.core.Combiner4;
+import org.lucidfox.jpromises.core.Combiner5;
+import org.lucidfox.jpromises.core.Combiner6;
+import org.lucidfox.jpromises.core.Combiner7;
+import org.lucidfox.jpromises.core.Combiner8;
+import org.lucidfox.jpromises.core.ContextPropagator;
 import org.lucidfox.jpromises.core.DeferredInvoker;
+import org.lucidfox.jpromises.core.ProcessOutputListener;
 import org.lucidfox.jpromises.core.PromiseHandler;
+import org.lucidfox.jpromises.core.PromiseInstrumentation;
+import org.lucidfox.jpromises.core.PromiseTracker;
 import org.lucidfox.jpromises.core.RejectCallback;
 import org.lucidfox.jpromises.core.ResolveCallback;
 import org.lucidfox.jpromises.core.Resolver;
 import org.lucidfox.jpromises.core.Thenable;
 import org.lucidfox.jpromises.core.ThrowingRunnable;
 import org.lucidfox.jpromises.core.ThrowingSupplier;
+import org.lucidfox.jpromises.core.UnhandledRejectionHandler;
+import org.lucidfox.jpromises.invoker.PriorityDeferredInvoker;
 
 /**
  * <p>
@@ -50,7 +66,20 @@ import org.lucidfox.jpromises.core.ThrowingSupplier;
  */
 @GwtCompatible
 public class PromiseFactory {
+	private static final ContextPropagator<?>[] NO_CONTEXT_PROPAGATORS = new ContextPropagator<?>[0];
+	
 	private final DeferredInvoker deferredInvoker;
+	private PromiseInstrumentation instrumentation;
+	private PromiseTracker promiseTracker;
+	private UnhandledRejectionHandler unhandledRejectionHandler;
+	private int asyncStackTraceInterval;
+	private int asyncStackTraceCounter;
+	private volatile ContextPropagator<?>[] contextPropagators = NO_CONTEXT_PROPAGATORS;
+	private boolean threadConfined;
+	private boolean threadConfinementChecked;
+	// The factory whose invoker thread a lane factory returned by withPriority shares
+	private PromiseFactory parent;
+	
 	/**
 	 * Instantiates a new promise factory.
 	 *
@@ -70,6 +99,261 @@ public class PromiseFactory {
 		this.deferredInvoker = deferredInvoker;
 	}
 	
+	/**
+	 * Returns the instrumentation observing promises created by this factory.
+	 *
+	 * @return the instrumentation, or {@code null} if none is set
+	 */
+	public final PromiseInstrumentation getInstrumentation() {
+		return instrumentation;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the instrumentation observing the lifecycle of promises created by this factory, as well as tasks
+	 * submitted to its deferred invoker. Pass {@code null} to disable instrumentation, which is the default.
+	 * </p><p>
+	 * Promises created before this call are not affected. The instrumentation should be set before the factory
+	 * is shared between threads.
+	 * </p>
+	 *
+	 * @param instrumentation the instrumentation, or {@code null} to disable instrumentation
+	 */
+	public final void setInstrumentation(final PromiseInstrumentation instrumentation) {
+		this.instrumentation = instrumentation;
+	}
+	
+	/**
+	 * Returns the tracker observing individual promises created by this factory.
+	 *
+	 * @return the promise tracker, or {@code null} if none is set
+	 */
+	public final PromiseTracker getPromiseTracker() {
+		return promiseTracker;
+	}
+	
+	/**
+	 * Sets the tracker observing individual promises created by this factory, such as a
+	 * {@link org.lucidfox.jpromises.debug.PendingPromiseRegistry PendingPromiseRegistry}. Pass {@code null} to
+	 * disable tracking, which is the default. Promises created before this call are not affected. The tracker
+	 * should be set before the factory is shared between threads.
+	 *
+	 * @param promiseTracker the promise tracker, or {@code null} to disable tracking
+	 */
+	public final void setPromiseTracker(final PromiseTracker promiseTracker) {
+		this.promiseTracker = promiseTracker;
+	}
+	
+	/**
+	 * Returns the handler notified of unhandled rejections of promises created by this factory.
+	 *
+	 * @return the unhandled rejection handler, or {@code null} if none is set
+	 */
+	public final UnhandledRejectionHandler getUnhandledRejectionHandler() {
+		return unhandledRejectionHandler;
+	}
+	
+	/**
+	 * <p>
+	 * Sets the handler notified when a promise created by this factory is rejected and nothing handles the
+	 * rejection. See {@link UnhandledRejectionHandler} for the exact definition of an unhandled rejection. By default,
+	 * no handler is set and unhandled rejections are silently ignored.
+	 * </p><p>
+	 * Tracking adds no work for promises that already have {@code then} callbacks when they are rejected, and keeps
+	 * no references to rejected promises beyond the deferred invoker task that processes the rejection anyway.
+	 * The handler should be set before the factory is shared between threads.
+	 * </p>
+	 *
+	 * @param unhandledRejectionHandler the handler, or {@code null} to ignore unhandled rejections
+	 */
+	public final void setUnhandledRejectionHandler(final UnhandledRejectionHandler unhandledRejectionHandler) {
+		this.unhandledRejectionHandler = unhandledRejectionHandler;
+	}
+	
+	/**
+	 * Returns the async stack trace sampling interval.
+	 *
+	 * @return the sampling interval, or 0 if async stack traces are disabled
+	 * @see #setAsyncStackTraceSampling
+	 */
+	public final int getAsyncStackTraceSampling() {
+		return asyncStackTraceInterval;
+	}
+	
+	/**
+	 * <p>
+	 * Enables or disables async stack traces for promises created by this factory. When enabled, the call site of
+	 * {@code then} (and every method delegating to it) is captured as an {@link AsyncCallSiteException}, which is
+	 * attached as a suppressed exception to any exception thrown by the callbacks registered there. This links the
+	 * rejection reason back to the code that built the promise chain.
+	 * </p><p>
+	 * Capturing a stack trace is relatively expensive, so call sites can be sampled: with an interval of
+	 * {@code n}, approximately one in {@code n} calls to {@code then} is recorded. The sampling counter is not
+	 * synchronized, so the interval is not exact when promises are chained from several threads. An interval of 1
+	 * records every call site, which is useful during development. An interval of 0 disables async stack traces,
+	 * which is the default.
+	 * </p>
+	 *
+	 * @param interval the sampling interval, or 0 to disable async stack traces
+	 * @throws IllegalArgumentException if {@code interval} is negative
+	 */
+	public final void setAsyncStackTraceSampling(final int interval) {
+		if (interval < 0) {
+			throw new IllegalArgumentException("Negative sampling interval: " + interval);
+		}
+		
+		asyncStackTraceInterval = interval;
+	}
+	
+	/**
+	 * <p>
+	 * Registers a {@link ContextPropagator}, so that the context it manages is captured whenever {@code then} or
+	 * {@code promiseAsync} (or any method delegating to them) is called on a promise created by this factory, and
+	 * restored around the execution of the corresponding callback or promise handler.
+	 * </p><p>
+	 * Propagators are kept in a copy-on-write array, so registering them is relatively expensive, while reading
+	 * them on every {@code then} call is a single reference read. Contexts are restored in registration order, and
+	 * reset in reverse order.
+	 * </p>
+	 *
+	 * @param propagator the propagator to register
+	 */
+	public final void addContextPropagator(final ContextPropagator<?> propagator) {
+		if (propagator == null) {
+			throw new NullPointerException("propagator");
+		}
+		
+		synchronized (this) {
+			final ContextPropagator<?>[] newPropagators = Arrays.copyOf(contextPropagators,
+					contextPropagators.length + 1);
+			newPropagators[contextPropagators.length] = propagator;
+			contextPropagators = newPropagators;
+		}
+	}
+	
+	/**
+	 * Unregisters a {@link ContextPropagator} previously registered with {@link #addContextPropagator}. Callbacks
+	 * registered while the propagator was active still restore the context captured at that time.
+	 *
+	 * @param propagator the propagator to unregister
+	 * @return {@code true} if the propagator was registered, {@code false} otherwise
+	 */
+	public final boolean removeContextPropagator(final ContextPropagator<?> propagator) {
+		synchronized (this) {
+			final List<ContextPropagator<?>> newPropagators = new ArrayList<>(Arrays.asList(contextPropagators));
+			
+			if (!newPropagators.remove(propagator)) {
+				return false;
+			}
+			
+			contextPropagators = newPropagators.toArray(NO_CONTEXT_PROPAGATORS);
+			return true;
+		}
+	}
+	
+	/**
+	 * Returns whether promises created by this factory are confined to the invoker thread.
+	 *
+	 * @return {@code true} if promises skip their internal synchronization
+	 * @see #setThreadConfined
+	 */
+	public final boolean isThreadConfined() {
+		return threadConfined;
+	}
+	
+	/**
+	 * <p>
+	 * Declares that all operations on promises created by this factory - creating and settling them, and registering
+	 * callbacks - happen on the thread the deferred invoker runs tasks on, such as the event dispatch thread of a
+	 * GUI toolkit. Promises then skip the monitor they otherwise enter several times for each {@code then} call
+	 * and each settlement, which is a measurable cost even when the monitor is never contended.
+	 * </p><p>
+	 * Handlers started with {@code promiseAsync}, {@code supplyAsync} and the other methods taking an
+	 * {@link AsyncRunner} settle their promise through the deferred invoker in this mode, so they remain safe to use.
+	 * Anything else that settles a promise from another thread, such as
+	 * {@link CompletableFutures#fromCompletionStage}, must not be used with a thread-confined factory. This setting
+	 * must be changed before the factory creates any promises.
+	 * </p>
+	 *
+	 * @param threadConfined {@code true} to confine promises to the invoker thread
+	 * @see #setThreadConfinementChecked
+	 */
+	public final void setThreadConfined(final boolean threadConfined) {
+		this.threadConfined = threadConfined;
+	}
+	
+	/**
+	 * Returns whether thread confinement is checked on every promise operation.
+	 *
+	 * @return {@code true} if off-thread use of a thread-confined factory is detected
+	 * @see #setThreadConfinementChecked
+	 */
+	public final boolean isThreadConfinementChecked() {
+		return threadConfinementChecked;
+	}
+	
+	/**
+	 * Enables or disables checking that promises of a {@link #setThreadConfined thread-confined} factory are only
+	 * used on the invoker thread, as reported by {@link #isInvokerThread()}. Off-thread operations then throw
+	 * {@link IllegalStateException} instead of silently corrupting the promise state. This is meant for debugging;
+	 * the check is skipped by factories that are not thread-confined.
+	 *
+	 * @param threadConfinementChecked {@code true} to check thread confinement
+	 */
+	public final void setThreadConfinementChecked(final boolean threadConfinementChecked) {
+		this.threadConfinementChecked = threadConfinementChecked;
+	}
+	
+	/**
+	 * Returns whether the current thread is the one the deferred invoker runs tasks on. Platform-specific factories
+	 * override this method; the default implementation cannot tell, and returns {@code true}.
+	 *
+	 * @return {@code true} if the current thread is the invoker thread, or if it cannot be determined
+	 * @see #setThreadConfinementChecked
+	 */
+	protected boolean isInvokerThread() {
+		return parent == null || parent.isInvokerThread();
+	}
+	
+	/**
+	 * <p>
+	 * Returns a promise factory whose promises run their {@code then} callbacks in the given priority lane. Since
+	 * promises chained with {@code then} inherit the factory of their parent, the priority applies to the whole
+	 * chain started from the returned factory.
+	 * </p><p>
+	 * Priorities are only meaningful if this factory's deferred invoker is a {@link PriorityDeferredInvoker}, or
+	 * one of its lanes. Otherwise, the hint is ignored and this factory is returned. The returned factory is a plain
+	 * {@code PromiseFactory} sharing this factory's configuration at the time of the call; later changes to this
+	 * factory's configuration do not affect it.
+	 * </p>
+	 *
+	 * @param priority the lane number, from 0 (lowest priority) to the lane count of the invoker minus one
+	 * @return the promise factory for the lane
+	 * @throws IllegalArgumentException if the deferred invoker has no such lane
+	 */
+	public final PromiseFactory withPriority(final int priority) {
+		if (!(deferredInvoker instanceof PriorityDeferredInvoker)) {
+			return this;
+		}
+		
+		final PriorityDeferredInvoker laneInvoker = ((PriorityDeferredInvoker) deferredInvoker).lane(priority);
+		
+		if (laneInvoker == deferredInvoker) {
+			return this;
+		}
+		
+		final PromiseFactory factory = new PromiseFactory(laneInvoker);
+		factory.instrumentation = instrumentation;
+		factory.promiseTracker = promiseTracker;
+		factory.unhandledRejectionHandler = unhandledRejectionHandler;
+		factory.asyncStackTraceInterval = asyncStackTraceInterval;
+		factory.contextPropagators = contextPropagators;
+		factory.threadConfined = threadConfined;
+		factory.threadConfinementChecked = threadConfinementChecked;
+		factory.parent = this;
+		return factory;
+	}
+	
 	/**
 	 * Instantiates a new {@link Promise} with the given {@link PromiseHandler}. The execution of the promise handler
 	 * starts immediately.
@@ -79,7 +363,7 @@ public class PromiseFactory {
 	 * @return the new promise whose evaluation is specified by the handler
 	 */
 	public final <V> Promise<V> promise(final PromiseHandler<V> handler) {
-		return new Promise<>(deferredInvoker, handler);
+		return new Promise<>(this, handler);
 	}
 	
 	/**
@@ -92,21 +376,89 @@ public class PromiseFactory {
 	 * @return the new promise whose evaluation is specified by the handler
 	 */
 	public final <V> Promise<V> promiseAsync(final PromiseHandler<V> handler, final AsyncRunner asyncRunner) {
-		return promise(new PromiseHandler<V>() {
+		return promise(asyncHandler(handler, asyncRunner));
+	}
+	
+	/**
+	 * <p>
+	 * Instantiates a new lazy {@link Promise} with the given {@link PromiseHandler}. Unlike
+	 * {@link #promise(PromiseHandler)}, the handler is not started until a callback is first registered on the
+	 * promise with {@code then}, {@code done} or any method delegating to them. This is useful for speculative work
+	 * whose result may never be consumed.
+	 * </p><p>
+	 * The handler is started exactly once, in the thread registering the first callback, even if several threads
+	 * register callbacks concurrently. Until then, the promise holds nothing but a reference to the handler.
+	 * </p>
+	 *
+	 * @param <V> the value type of the promise
+	 * @param handler the promise handler
+	 * @return the new promise whose evaluation is specified by the handler
+	 */
+	public final <V> Promise<V> lazy(final PromiseHandler<V> handler) {
+		return new Promise<>(this, handler, true);
+	}
+	
+	/**
+	 * Instantiates a new lazy {@link Promise} asynchronously with the given {@link PromiseHandler}. The execution of
+	 * the promise handler is delegated to {@code asyncRunner}, but not until a callback is first registered on the
+	 * promise. See {@link #lazy(PromiseHandler)}.
+	 *
+	 * @param <V> the value type of the promise
+	 * @param handler the promise handler
+	 * @param asyncRunner the runner responsible for asynchronously executing the promise handler
+	 * @return the new promise whose evaluation is specified by the handler
+	 */
+	public final <V> Promise<V> lazyAsync(final PromiseHandler<V> handler, final AsyncRunner asyncRunner) {
+		return lazy(asyncHandler(handler, asyncRunner));
+	}
+	
+	/**
+	 * Instantiates a new lazy asynchronous {@link Promise} that is resolved with the value returned by
+	 * {@code supplier}. The execution of the supplier is delegated to {@code asyncRunner}, but not until a callback
+	 * is first registered on the promise. See {@link #lazy(PromiseHandler)}.
+	 *
+	 * @param <V> the value type of the promise and supplier
+	 * @param supplier the supplier that returns the promise's eventual value
+	 * @param asyncRunner the runner responsible for asynchronously executing the supplier
+	 * @return the new promise whose evaluation is specified by the supplier
+	 */
+	public final <V> Promise<V> lazySupplyAsync(final ThrowingSupplier<? extends V> supplier,
+			final AsyncRunner asyncRunner) {
+		return lazyAsync(new PromiseHandler<V>() {
+			@Override
+			public void handle(final Resolver<V> resolve) throws Exception {
+				resolve.resolve(supplier.get());
+			}
+		}, asyncRunner);
+	}
+	
+	private <V> PromiseHandler<V> asyncHandler(final PromiseHandler<V> handler, final AsyncRunner asyncRunner) {
+		final ContextSnapshot context = captureContext();
+		
+		return new PromiseHandler<V>() {
 			@Override
 			public void handle(final Resolver<V> resolve) throws Exception {
 				asyncRunner.runAsync(new Runnable() {
 					@Override
 					public void run() {
+						final Object[] previousContext = context == null ? null : context.restore();
+						
+						// A thread-confined promise must not be settled from the async runner's thread
+						final Resolver<V> resolver = threadConfined ? new InvokerResolver<>(resolve) : resolve;
+						
 						try {
-							handler.handle(resolve);
+							handler.handle(resolver);
 						} catch (final Exception e) {
-							resolve.reject(e);
+							resolver.reject(e);
+						} finally {
+							if (previousContext != null) {
+								context.reset(previousContext);
+							}
 						}
 					}
 				});
 			}
-		});
+		};
 	}
 	
 	/**
@@ -157,7 +509,7 @@ public class PromiseFactory {
 	 * @return the promise resolved to the value
 	 */
 	public final <V> Promise<V> resolve(final V value) {
-		return new Promise<>(deferredInvoker, value);
+		return new Promise<>(this, value);
 	}
 	
 	/**
@@ -192,6 +544,48 @@ public class PromiseFactory {
 		});
 	}
 	
+	/**
+	 * <p>
+	 * Returns a {@link Promise} that is resolved with the exit code of the given process when it terminates, without
+	 * blocking a thread per process.
+	 * </p><p>
+	 * On Java 9 and later, this uses {@code Process.onExit()}. On earlier versions, the process is watched by a single
+	 * polling thread shared by all processes, so the number of threads stays constant however many processes are
+	 * alive. The promise is settled directly in the thread that detects the exit. This method does not consume the
+	 * output of the process, which may block once its output pipes are full; redirect the output with
+	 * {@link ProcessBuilder}, or use {@link #onExit(Process, ProcessOutputListener, ProcessOutputListener)}.
+	 * </p>
+	 *
+	 * @param process the process
+	 * @return the promise resolved with the exit code of the process
+	 */
+	@GwtIncompatible("java.lang.Process")
+	public final Promise<Integer> onExit(final Process process) {
+		return ProcessBridge.onExit(this, process);
+	}
+	
+	/**
+	 * <p>
+	 * Returns a {@link Promise} that is resolved with the exit code of the given process when it terminates, and
+	 * streams its standard output and error to the given listeners as it is produced, without buffering it all.
+	 * </p><p>
+	 * The process is watched by a single polling thread shared by all processes, which reads whatever output is
+	 * available without blocking and calls the listeners. Once the process exits, the output it left in the pipes is
+	 * delivered before the promise is resolved; output written afterwards by processes it started and that inherited
+	 * its pipes is not. If a listener throws an exception, the promise is rejected with it.
+	 * </p>
+	 *
+	 * @param process the process
+	 * @param stdout the listener receiving the standard output, or {@code null} to leave it unread
+	 * @param stderr the listener receiving the standard error, or {@code null} to leave it unread
+	 * @return the promise resolved with the exit code of the process
+	 */
+	@GwtIncompatible("java.lang.Process")
+	public final Promise<Integer> onExit(final Process process, final ProcessOutputListener stdout,
+			final ProcessOutputListener stderr) {
+		return ProcessBridge.onExit(this, process, stdout, stderr);
+	}
+	
 	/**
 	 * Instantiates a {@link Promise} that starts rejected with the given exception as its rejection reason.
 	 *
@@ -230,7 +624,9 @@ public class PromiseFactory {
 					@Override
 					public Thenable<V> onReject(final Throwable exception) throws Exception {
 						resolve.reject(exception);
-						return null;
+						// Not null, which would reject the (otherwise unused) chained promise and report it
+						// as unhandled
+						return PromiseFactory.this.resolve((V) null);
 					}
 				});
 			}
@@ -306,9 +702,12 @@ public class PromiseFactory {
 							@Override
 							public Promise<Void> onReject(final Throwable exception) {
 								synchronized (lock) {
-									remaining = 0;
-									resolve.reject(exception);
-									return null;
+									if (remaining > 0) {
+										remaining = 0;
+										resolve.reject(exception);
+									}
+									
+									return PromiseFactory.this.resolve((Void) null);
 								}
 							}
 						});
@@ -372,7 +771,7 @@ public class PromiseFactory {
 									anyFinished = true;
 								}
 								
-								return null;
+								return PromiseFactory.this.resolve((Void) null);
 							}
 						});
 					}
@@ -384,6 +783,623 @@ public class PromiseFactory {
 		});
 	}
 	
+	/**
+	 * <p>
+	 * Returns a {@code Promise} that folds the values of the given thenables in the order they are resolved,
+	 * starting from {@code identity}. The returned promise is resolved with the final accumulated value when
+	 * all thenables are resolved, or rejected when at least one thenable is rejected or the accumulator throws.
+	 * </p><p>
+	 * Unlike reducing the result of {@link #all(Collection) all}, no collection of values is built: each value
+	 * is passed to the accumulator as soon as it arrives, and is not retained afterwards. Since the order of
+	 * resolution is not defined, the accumulator should be commutative and associative. Calls to the accumulator
+	 * are serialized.
+	 * </p>
+	 *
+	 * @param <V> the lower bound for value types of the thenables
+	 * @param <R> the type of the accumulated value
+	 * @param thenables the thenables to fold
+	 * @param identity the initial accumulated value
+	 * @param accumulator the function combining the accumulated value with the value of a thenable
+	 * @return the promise of the accumulated value
+	 */
+	public final <V, R> Promise<R> reduceAsCompleted(final Collection<? extends Thenable<? extends V>> thenables,
+			final R identity, final Combiner2<? super R, ? super V, ? extends R> accumulator) {
+		return promise(new PromiseHandler<R>() {
+			private final Object lock = new Object();
+			private int remaining;
+			private R accumulated = identity;
+			private boolean done;
+			
+			@Override
+			public void handle(final Resolver<R> resolve) throws Exception {
+				remaining = thenables.size();
+				
+				// Need a short-circuit here; there will be no resolve() calls in the loop for 0 items
+				if (remaining == 0) {
+					resolve.resolve(identity);
+					return;
+				}
+				
+				final ResolveCallback<V, Void> onResolve = new ResolveCallback<V, Void>() {
+					@Override
+					public Promise<Void> onResolve(final V value) throws Exception {
+						final R result;
+						
+						synchronized (lock) {
+							if (done) {
+								return null;
+							}
+							
+							try {
+								accumulated = accumulator.combine(accumulated, value);
+							} catch (final Exception e) {
+								done = true;
+								resolve.reject(e);
+								return null;
+							}
+							
+							if (--remaining > 0) {
+								return null;
+							}
+							
+							done = true;
+							result = accumulated;
+							accumulated = null;
+						}
+						
+						resolve.resolve(result);
+						return null;
+					}
+				};
+				
+				final RejectCallback<Void> onReject = new RejectCallback<Void>() {
+					@Override
+					public Promise<Void> onReject(final Throwable exception) {
+						synchronized (lock) {
+							if (done) {
+								return PromiseFactory.this.resolve((Void) null);
+							}
+							
+							done = true;
+							accumulated = null;
+						}
+						
+						resolve.reject(exception);
+						return PromiseFactory.this.resolve((Void) null);
+					}
+				};
+				
+				try {
+					for (final Thenable<? extends V> thenable: thenables) {
+						thenable.then(onResolve, onReject);
+					}
+				} catch (final Exception e) {
+					synchronized (lock) {
+						if (done) {
+							return;
+						}
+						
+						done = true;
+					}
+					
+					throw e;
+				}
+			}
+		});
+	}
+	
+	/**
+	 * <p>
+	 * Returns a {@code Promise} that folds the values of the given thenables in the order they are resolved, like
+	 * {@link #reduceAsCompleted}, but without serializing all calls to the accumulator on one lock. Values are
+	 * folded into partial accumulators striped by the thread running the callback, each starting from a new
+	 * {@code identity} value, and the partial accumulators are combined with {@code merger} once all thenables are
+	 * resolved.
+	 * </p><p>
+	 * This only helps if this factory's deferred invoker runs callbacks on several threads, as with
+	 * {@link org.lucidfox.jpromises.forkjoin.ForkJoinPromiseFactory ForkJoinPromiseFactory}. The accumulator and
+	 * merger should be commutative and associative.
+	 * </p>
+	 *
+	 * @param <V> the lower bound for value types of the thenables
+	 * @param <A> the type of the accumulated value
+	 * @param thenables the thenables to fold
+	 * @param identity the supplier of initial values for each partial accumulator
+	 * @param accumulator the function combining a partial accumulated value with the value of a thenable
+	 * @param merger the function combining two partial accumulated values
+	 * @return the promise of the accumulated value
+	 */
+	@GwtIncompatible("java.util.concurrent.atomic")
+	public final <V, A> Promise<A> reduceAsCompletedParallel(
+			final Collection<? extends Thenable<? extends V>> thenables, final ThrowingSupplier<? extends A> identity,
+			final Combiner2<? super A, ? super V, ? extends A> accumulator,
+			final Combiner2<? super A, ? super A, ? extends A> merger) {
+		return promise(new PromiseHandler<A>() {
+			@Override
+			public void handle(final Resolver<A> resolve) {
+				final ParallelReduceState<V, A> state = new ParallelReduceState<>(PromiseFactory.this, resolve,
+						thenables.size(), identity, accumulator, merger);
+				
+				try {
+					state.subscribe(thenables);
+				} catch (final Exception e) {
+					state.failed(e);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * <p>
+	 * Returns a {@code Promise} that wraps a map of thenables or promises. The returned promise is resolved when all
+	 * thenables are resolved, or rejected when at least one thenable is rejected. The returned promise's value is
+	 * a map from the keys of {@code thenables} to the values of the corresponding thenables.
+	 * </p><p>
+	 * The result map is immutable, iterates in the order of {@code thenables}, and is built once all values have
+	 * arrived, as a compact open-addressing hash table sized for the number of keys.
+	 * </p>
+	 *
+	 * @param <K> the key type
+	 * @param <V> the lower bound for value types of the combined thenables
+	 * @param thenables the thenables to combine, by key
+	 * @return the combined promise
+	 */
+	public final <K, V> Promise<Map<K, V>> allMap(final Map<K, ? extends Thenable<? extends V>> thenables) {
+		return allMap(thenables, null, false, null);
+	}
+	
+	/**
+	 * <p>
+	 * Returns a {@code Promise} that wraps a map of thenables or promises. The returned promise is resolved with
+	 * {@code target} when all thenables are resolved, or rejected when at least one thenable is rejected.
+	 * </p><p>
+	 * The value of each thenable is put into {@code target} under its key as soon as it arrives, so if the returned
+	 * promise is rejected, {@code target} still contains the values received until then. Puts are serialized, so
+	 * {@code target} does not need to be thread-safe, but it should not be accessed by other threads until the
+	 * returned promise is settled.
+	 * </p>
+	 *
+	 * @param <K> the key type
+	 * @param <V> the lower bound for value types of the combined thenables
+	 * @param <M> the type of the target map
+	 * @param thenables the thenables to combine, by key
+	 * @param target the map to put the values into
+	 * @return the combined promise
+	 */
+	public final <K, V, M extends Map<K, V>> Promise<M> allMap(
+			final Map<K, ? extends Thenable<? extends V>> thenables, final M target) {
+		if (target == null) {
+			throw new NullPointerException("target");
+		}
+		
+		return allMap(thenables, target, false, null);
+	}
+	
+	/**
+	 * <p>
+	 * Returns a {@code Promise} that wraps a map of thenables or promises, and is resolved when all of them are
+	 * settled. The returned promise is never rejected because of a rejected thenable. Its value is a map from
+	 * the keys of resolved thenables to their values; the keys of rejected thenables are left out.
+	 * </p><p>
+	 * The result map is immutable, iterates in the order of {@code thenables}, and is built as a compact
+	 * open-addressing hash table, the same as in {@link #allMap(Map)}.
+	 * </p>
+	 *
+	 * @param <K> the key type
+	 * @param <V> the lower bound for value types of the combined thenables
+	 * @param thenables the thenables to combine, by key
+	 * @param failures the map to put the rejection reasons of rejected thenables into under their key, or
+	 * 			{@code null} to discard them. Puts are serialized, and complete before the returned promise is
+	 * 			resolved.
+	 * @return the combined promise
+	 */
+	public final <K, V> Promise<Map<K, V>> allMapSettled(final Map<K, ? extends Thenable<? extends V>> thenables,
+			final Map<? super K, ? super Throwable> failures) {
+		return allMap(thenables, null, true, failures);
+	}
+	
+	private <K, V, R> Promise<R> allMap(final Map<K, ? extends Thenable<? extends V>> thenables,
+			final Map<K, V> target, final boolean settled, final Map<? super K, ? super Throwable> failures) {
+		return promise(new PromiseHandler<R>() {
+			@Override
+			public void handle(final Resolver<R> resolve) {
+				final AllMapState<K, V> state = new AllMapState<>(PromiseFactory.this, resolve, thenables.size(),
+						target, settled, failures);
+				
+				try {
+					state.subscribe(thenables);
+				} catch (final Exception e) {
+					state.failed(e);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * <p>
+	 * Returns a {@code Promise} that is resolved with the value returned by {@code combiner} for the values of
+	 * the given thenables, once all of them are resolved. The returned promise is rejected when at least one of the
+	 * thenables is rejected, or if the combiner throws an exception.
+	 * </p><p>
+	 * Unlike {@link #all(Thenable...) all}, the thenables can have unrelated value types. No intermediate list
+	 * is created, and the combiner is called exactly once. Overloads for up to eight thenables are provided.
+	 * </p>
+	 *
+	 * @param <A> the value type of the first thenable
+	 * @param <B> the value type of the second thenable
+	 * @param <R> the type of the combined value
+	 * @param a the first thenable
+	 * @param b the second thenable
+	 * @param combiner the function combining the values
+	 * @return the combined promise
+	 */
+	public final <A, B, R> Promise<R> zip(final Thenable<? extends A> a, final Thenable<? extends B> b,
+			final Combiner2<? super A, ? super B, ? extends R> combiner) {
+		return promise(new PromiseHandler<R>() {
+			@Override
+			public void handle(final Resolver<R> resolve) {
+				final ZipState<R> state = new ZipState<R>(PromiseFactory.this, resolve, 2) {
+					@Override
+					@SuppressWarnings("unchecked")
+					/* package */ R combine(final Object[] values) throws Exception {
+						return combiner.combine((A) values[0], (B) values[1]);
+					}
+				};
+				
+				try {
+					state.subscribe(0, a);
+					state.subscribe(1, b);
+				} catch (final Exception exception) {
+					state.failed(exception);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Returns a {@code Promise} that is resolved with the value returned by {@code combiner} for the values of
+	 * the given thenables, once all of them are resolved. See {@link #zip(Thenable, Thenable, Combiner2)}.
+	 *
+	 * @param <A> the value type of the first thenable
+	 * @param <B> the value type of the second thenable
+	 * @param <C> the value type of the third thenable
+	 * @param <R> the type of the combined value
+	 * @param a the first thenable
+	 * @param b the second thenable
+	 * @param c the third thenable
+	 * @param combiner the function combining the values
+	 * @return the combined promise
+	 */
+	public final <A, B, C, R> Promise<R> zip(final Thenable<? extends A> a, final Thenable<? extends B> b,
+			final Thenable<? extends C> c, final Combiner3<? super A, ? super B, ? super C, ? extends R> combiner) {
+		return promise(new PromiseHandler<R>() {
+			@Override
+			public void handle(final Resolver<R> resolve) {
+				final ZipState<R> state = new ZipState<R>(PromiseFactory.this, resolve, 3) {
+					@Override
+					@SuppressWarnings("unchecked")
+					/* package */ R combine(final Object[] values) throws Exception {
+						return combiner.combine((A) values[0], (B) values[1], (C) values[2]);
+					}
+				};
+				
+				try {
+					state.subscribe(0, a);
+					state.subscribe(1, b);
+					state.subscribe(2, c);
+				} catch (final Exception exception) {
+					state.failed(exception);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Returns a {@code Promise} that is resolved with the value returned by {@code combiner} for the values of
+	 * the given thenables, once all of them are resolved. See {@link #zip(Thenable, Thenable, Combiner2)}.
+	 *
+	 * @param <A> the value type of the first thenable
+	 * @param <B> the value type of the second thenable
+	 * @param <C> the value type of the third thenable
+	 * @param <D> the value type of the fourth thenable
+	 * @param <R> the type of the combined value
+	 * @param a the first thenable
+	 * @param b the second thenable
+	 * @param c the third thenable
+	 * @param d the fourth thenable
+	 * @param combiner the function combining the values
+	 * @return the combined promise
+	 */
+	public final <A, B, C, D, R> Promise<R> zip(final Thenable<? extends A> a, final Thenable<? extends B> b,
+			final Thenable<? extends C> c, final Thenable<? extends D> d,
+			final Combiner4<? super A, ? super B, ? super C, ? super D, ? extends R> combiner) {
+		return promise(new PromiseHandler<R>() {
+			@Override
+			public void handle(final Resolver<R> resolve) {
+				final ZipState<R> state = new ZipState<R>(PromiseFactory.this, resolve, 4) {
+					@Override
+					@SuppressWarnings("unchecked")
+					/* package */ R combine(final Object[] values) throws Exception {
+						return combiner.combine((A) values[0], (B) values[1], (C) values[2], (D) values[3]);
+					}
+				};
+				
+				try {
+					state.subscribe(0, a);
+					state.subscribe(1, b);
+					state.subscribe(2, c);
+					state.subscribe(3, d);
+				} catch (final Exception exception) {
+					state.failed(exception);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Returns a {@code Promise} that is resolved with the value returned by {@code combiner} for the values of
+	 * the given thenables, once all of them are resolved. See {@link #zip(Thenable, Thenable, Combiner2)}.
+	 *
+	 * @param <A> the value type of the first thenable
+	 * @param <B> the value type of the second thenable
+	 * @param <C> the value type of the third thenable
+	 * @param <D> the value type of the fourth thenable
+	 * @param <E> the value type of the fifth thenable
+	 * @param <R> the type of the combined value
+	 * @param a the first thenable
+	 * @param b the second thenable
+	 * @param c the third thenable
+	 * @param d the fourth thenable
+	 * @param e the fifth thenable
+	 * @param combiner the function combining the values
+	 * @return the combined promise
+	 */
+	public final <A, B, C, D, E, R> Promise<R> zip(final Thenable<? extends A> a, final Thenable<? extends B> b,
+			final Thenable<? extends C> c, final Thenable<? extends D> d, final Thenable<? extends E> e,
+			final Combiner5<? super A, ? super B, ? super C, ? super D, ? super E, ? extends R> combiner) {
+		return promise(new PromiseHandler<R>() {
+			@Override
+			public void handle(final Resolver<R> resolve) {
+				final ZipState<R> state = new ZipState<R>(PromiseFactory.this, resolve, 5) {
+					@Override
+					@SuppressWarnings("unchecked")
+					/* package */ R combine(final Object[] values) throws Exception {
+						return combiner.combine((A) values[0], (B) values[1], (C) values[2], (D) values[3],
+								(E) values[4]);
+					}
+				};
+				
+				try {
+					state.subscribe(0, a);
+					state.subscribe(1, b);
+					state.subscribe(2, c);
+					state.subscribe(3, d);
+					state.subscribe(4, e);
+				} catch (final Exception exception) {
+					state.failed(exception);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Returns a {@code Promise} that is resolved with the value returned by {@code combiner} for the values of
+	 * the given thenables, once all of them are resolved. See {@link #zip(Thenable, Thenable, Combiner2)}.
+	 *
+	 * @param <A> the value type of the first thenable
+	 * @param <B> the value type of the second thenable
+	 * @param <C> the value type of the third thenable
+	 * @param <D> the value type of the fourth thenable
+	 * @param <E> the value type of the fifth thenable
+	 * @param <F> the value type of the sixth thenable
+	 * @param <R> the type of the combined value
+	 * @param a the first thenable
+	 * @param b the second thenable
+	 * @param c the third thenable
+	 * @param d the fourth thenable
+	 * @param e the fifth thenable
+	 * @param f the sixth thenable
+	 * @param combiner the function combining the values
+	 * @return the combined promise
+	 */
+	public final <A, B, C, D, E, F, R> Promise<R> zip(final Thenable<? extends A> a, final Thenable<? extends B> b,
+			final Thenable<? extends C> c, final Thenable<? extends D> d, final Thenable<? extends E> e,
+			final Thenable<? extends F> f,
+			final Combiner6<? super A, ? super B, ? super C, ? super D, ? super E, ? super F, ? extends R> combiner) {
+		return promise(new PromiseHandler<R>() {
+			@Override
+			public void handle(final Resolver<R> resolve) {
+				final ZipState<R> state = new ZipState<R>(PromiseFactory.this, resolve, 6) {
+					@Override
+					@SuppressWarnings("unchecked")
+					/* package */ R combine(final Object[] values) throws Exception {
+						return combiner.combine((A) values[0], (B) values[1], (C) values[2], (D) values[3],
+								(E) values[4], (F) values[5]);
+					}
+				};
+				
+				try {
+					state.subscribe(0, a);
+					state.subscribe(1, b);
+					state.subscribe(2, c);
+					state.subscribe(3, d);
+					state.subscribe(4, e);
+					state.subscribe(5, f);
+				} catch (final Exception exception) {
+					state.failed(exception);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Returns a {@code Promise} that is resolved with the value returned by {@code combiner} for the values of
+	 * the given thenables, once all of them are resolved. See {@link #zip(Thenable, Thenable, Combiner2)}.
+	 *
+	 * @param <A> the value type of the first thenable
+	 * @param <B> the value type of the second thenable
+	 * @param <C> the value type of the third thenable
+	 * @param <D> the value type of the fourth thenable
+	 * @param <E> the value type of the fifth thenable
+	 * @param <F> the value type of the sixth thenable
+	 * @param <G> the value type of the seventh thenable
+	 * @param <R> the type of the combined value
+	 * @param a the first thenable
+	 * @param b the second thenable
+	 * @param c the third thenable
+	 * @param d the fourth thenable
+	 * @param e the fifth thenable
+	 * @param f the sixth thenable
+	 * @param g the seventh thenable
+	 * @param combiner the function combining the values
+	 * @return the combined promise
+	 */
+	public final <A, B, C, D, E, F, G, R> Promise<R> zip(final Thenable<? extends A> a, final Thenable<? extends B> b,
+			final Thenable<? extends C> c, final Thenable<? extends D> d, final Thenable<? extends E> e,
+			final Thenable<? extends F> f, final Thenable<? extends G> g,
+			final Combiner7<? super A, ? super B, ? super C, ? super D, ? super E, ? super F, ? super G,
+					? extends R> combiner) {
+		return promise(new PromiseHandler<R>() {
+			@Override
+			public void handle(final Resolver<R> resolve) {
+				final ZipState<R> state = new ZipState<R>(PromiseFactory.this, resolve, 7) {
+					@Override
+					@SuppressWarnings("unchecked")
+					/* package */ R combine(final Object[] values) throws Exception {
+						return combiner.combine((A) values[0], (B) values[1], (C) values[2], (D) values[3],
+								(E) values[4], (F) values[5], (G) values[6]);
+					}
+				};
+				
+				try {
+					state.subscribe(0, a);
+					state.subscribe(1, b);
+					state.subscribe(2, c);
+					state.subscribe(3, d);
+					state.subscribe(4, e);
+					state.subscribe(5, f);
+					state.subscribe(6, g);
+				} catch (final Exception exception) {
+					state.failed(exception);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Returns a {@code Promise} that is resolved with the value returned by {@code combiner} for the values of
+	 * the given thenables, once all of them are resolved. See {@link #zip(Thenable, Thenable, Combiner2)}.
+	 *
+	 * @param <A> the value type of the first thenable
+	 * @param <B> the value type of the second thenable
+	 * @param <C> the value type of the third thenable
+	 * @param <D> the value type of the fourth thenable
+	 * @param <E> the value type of the fifth thenable
+	 * @param <F> the value type of the sixth thenable
+	 * @param <G> the value type of the seventh thenable
+	 * @param <H> the value type of the eighth thenable
+	 * @param <R> the type of the combined value
+	 * @param a the first thenable
+	 * @param b the second thenable
+	 * @param c the third thenable
+	 * @param d the fourth thenable
+	 * @param e the fifth thenable
+	 * @param f the sixth thenable
+	 * @param g the seventh thenable
+	 * @param h the eighth thenable
+	 * @param combiner the function combining the values
+	 * @return the combined promise
+	 */
+	public final <A, B, C, D, E, F, G, H, R> Promise<R> zip(final Thenable<? extends A> a,
+			final Thenable<? extends B> b, final Thenable<? extends C> c, final Thenable<? extends D> d,
+			final Thenable<? extends E> e, final Thenable<? extends F> f, final Thenable<? extends G> g,
+			final Thenable<? extends H> h,
+			final Combiner8<? super A, ? super B, ? super C, ? super D, ? super E, ? super F, ? super G, ? super H,
+					? extends R> combiner) {
+		return promise(new PromiseHandler<R>() {
+			@Override
+			public void handle(final Resolver<R> resolve) {
+				final ZipState<R> state = new ZipState<R>(PromiseFactory.this, resolve, 8) {
+					@Override
+					@SuppressWarnings("unchecked")
+					/* package */ R combine(final Object[] values) throws Exception {
+						return combiner.combine((A) values[0], (B) values[1], (C) values[2], (D) values[3],
+								(E) values[4], (F) values[5], (G) values[6], (H) values[7]);
+					}
+				};
+				
+				try {
+					state.subscribe(0, a);
+					state.subscribe(1, b);
+					state.subscribe(2, c);
+					state.subscribe(3, d);
+					state.subscribe(4, e);
+					state.subscribe(5, f);
+					state.subscribe(6, g);
+					state.subscribe(7, h);
+				} catch (final Exception exception) {
+					state.failed(exception);
+				}
+			}
+		});
+	}
+	
+	/* package */ AsyncCallSiteException sampleCallSite() {
+		final int interval = asyncStackTraceInterval;
+		
+		if (interval == 0) {
+			return null;
+		}
+		
+		if (interval > 1) {
+			// Racy, but only the sampling accuracy suffers
+			if (++asyncStackTraceCounter < interval) {
+				return null;
+			}
+			
+			asyncStackTraceCounter = 0;
+		}
+		
+		return new AsyncCallSiteException();
+	}
+	
+	/* package */ ContextSnapshot captureContext() {
+		return ContextSnapshot.capture(contextPropagators);
+	}
+	
+	/**
+	 * Returns whether a promise may skip its monitor, checking that the caller is on the invoker thread if requested.
+	 */
+	/* package */ boolean isConfinedCall() {
+		if (!threadConfined) {
+			return false;
+		}
+		
+		if (threadConfinementChecked && !isInvokerThread()) {
+			throw new IllegalStateException("Promise of a thread-confined factory used outside the invoker thread");
+		}
+		
+		return true;
+	}
+	
+	/* package */ void invokeDeferred(final Runnable task) {
+		final PromiseInstrumentation instrumentation = this.instrumentation;
+		
+		if (instrumentation == null) {
+			deferredInvoker.invokeDeferred(task);
+			return;
+		}
+		
+		instrumentation.taskScheduled();
+		deferredInvoker.invokeDeferred(new Runnable() {
+			@Override
+			public void run() {
+				instrumentation.taskStarted();
+				task.run();
+			}
+		});
+	}
+	
 	/**
 	 * Returns the string representation of this promise factory, which includes the string representation of
 	 * the deferred invoker. Subclasses are encouraged to override this method.
@@ -392,4 +1408,50 @@ public class PromiseFactory {
 	public String toString() {
 		return "PromiseFactory (deferredInvoker = " + deferredInvoker + ")";
 	}
+	
+	/**
+	 * A resolver that settles a thread-confined promise on the invoker thread, for handlers running elsewhere.
+	 */
+	private final class InvokerResolver<V> implements Resolver<V> {
+		private final Resolver<V> resolver;
+		
+		private InvokerResolver(final Resolver<V> resolver) {
+			this.resolver = resolver;
+		}
+		
+		@Override
+		public void resolve(final V value) {
+			invokeDeferred(new Runnable() {
+				@Override
+				public void run() {
+					resolver.resolve(value);
+				}
+			});
+		}
+		
+		@Override
+		public void deferResolve(final Thenable<? extends V> thenable) {
+			invokeDeferred(new Runnable() {
+				@Override
+				public void run() {
+					resolver.deferResolve(thenable);
+				}
+			});
+		}
+		
+		@Override
+		public void reject(final Throwable exception) {
+			invokeDeferred(new Runnable() {
+				@Override
+				public void run() {
+					resolver.reject(exception);
+				}
+			});
+		}
+		
+		@Override
+		public Promise<V> getPromise() {
+			return resolver.getPromise();
+		}
+	}
 }
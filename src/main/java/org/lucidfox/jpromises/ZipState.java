@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises;
+
+import org.lucidfox.jpromises.annotation.GwtCompatible;
+import org.lucidfox.jpromises.core.RejectCallback;
+import org.lucidfox.jpromises.core.ResolveCallback;
+import org.lucidfox.jpromises.core.Resolver;
+import org.lucidfox.jpromises.core.Thenable;
+
+/**
+ * The completion state of a {@code zip} operation: the values received so far, and a bitmask of the thenables
+ * still pending. Once all are resolved, the values are passed to the combiner exactly once. A rejection clears the
+ * whole mask, so the mask is zero once the operation is settled either way.
+ *
+ * <p>
+ * The mask is guarded by this object's monitor rather than an {@code AtomicInteger}, because GWT 2.7 does not
+ * emulate {@code java.util.concurrent.atomic}; in GWT the monitor compiles away. Since {@link Thenable#then} passes
+ * only the value, each thenable gets one small callback carrying its index; rejections share this object.
+ * </p>
+ *
+ * @param <R> the type of the combined value
+ */
+@GwtCompatible
+/* package */ abstract class ZipState<R> implements RejectCallback<Void> {
+	private final PromiseFactory factory;
+	private final Resolver<R> resolver;
+	private final Object[] values;
+	private int pending;
+	
+	/* package */ ZipState(final PromiseFactory factory, final Resolver<R> resolver, final int arity) {
+		this.factory = factory;
+		this.resolver = resolver;
+		this.values = new Object[arity];
+		this.pending = (1 << arity) - 1;
+	}
+	
+	/* package */ final void subscribe(final int index, final Thenable<?> thenable) throws Exception {
+		thenable.then(new ResolveCallback<Object, Void>() {
+			@Override
+			public Promise<Void> onResolve(final Object value) {
+				resolved(index, value);
+				return null;
+			}
+		}, this);
+	}
+	
+	/**
+	 * Calls the combiner with the received values.
+	 * 
+	 * @param values the values, in the order of the thenables
+	 * @return the combined value
+	 * @throws Exception if the combiner throws
+	 */
+	/* package */ abstract R combine(Object[] values) throws Exception;
+	
+	private void resolved(final int index, final Object value) {
+		final int bit = 1 << index;
+		
+		synchronized (this) {
+			if ((pending & bit) == 0) {
+				return;
+			}
+			
+			values[index] = value;
+			pending &= ~bit;
+			
+			if (pending != 0) {
+				return;
+			}
+		}
+		
+		final R result;
+		
+		try {
+			result = combine(values);
+		} catch (final Exception e) {
+			resolver.reject(e);
+			return;
+		}
+		
+		resolver.resolve(result);
+	}
+	
+	@Override
+	public Promise<Void> onReject(final Throwable exception) {
+		if (settle()) {
+			resolver.reject(exception);
+		}
+		
+		return factory.resolve((Void) null);
+	}
+	
+	/* package */ final void failed(final Exception exception) {
+		if (settle()) {
+			resolver.reject(exception);
+		}
+	}
+	
+	private synchronized boolean settle() {
+		if (pending == 0) {
+			return false;
+		}
+		
+		pending = 0;
+		return true;
+	}
+}
@@ -60,6 +60,14 @@ public class AndroidPromiseFactory extends PromiseFactory {
 		thread = handler.getLooper().getThread();
 	}
 
+	/**
+	 * Returns whether the current thread is the looper thread of this factory's handler.
+	 */
+	@Override
+	protected boolean isInvokerThread() {
+		return Thread.currentThread() == thread;
+	}
+	
 	/**
 	 * Returns the string {@code "AndroidPromiseFactory (thread = %THREAD%)"}, where {@code %THREAD%} is the result
 	 * of calling {@link Thread#toString()} on the thread to which this promise factory is bound
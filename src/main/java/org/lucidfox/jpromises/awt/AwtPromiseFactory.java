@@ -22,10 +22,13 @@
 package org.lucidfox.jpromises.awt;
 
 import java.awt.EventQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.lucidfox.jpromises.PromiseFactory;
 import org.lucidfox.jpromises.annotation.GwtIncompatible;
 import org.lucidfox.jpromises.core.DeferredInvoker;
+import org.lucidfox.jpromises.invoker.PriorityDeferredInvoker;
+import org.lucidfox.jpromises.invoker.TimeSlicedDeferredInvoker;
 
 /**
  * A {@link PromiseFactory} specialized for AWT and Swing. This factory's {@link DeferredInvoker} executes tasks
@@ -33,16 +36,70 @@ import org.lucidfox.jpromises.core.DeferredInvoker;
  */
 @GwtIncompatible("java.awt.EventQueue")
 public class AwtPromiseFactory extends PromiseFactory {
+	private static final DeferredInvoker EVENT_QUEUE_INVOKER = new DeferredInvoker() {
+		@Override
+		public void invokeDeferred(final Runnable task) {
+			EventQueue.invokeLater(task);
+		}
+	};
+	
+	private final TimeSlicedDeferredInvoker timeSlicedInvoker;
+	
 	/**
 	 * Instantiates a new AWT promise factory.
 	 */
 	public AwtPromiseFactory() {
-		super(new DeferredInvoker() {
-			@Override
-			public void invokeDeferred(final Runnable task) {
-				EventQueue.invokeLater(task);
-			}
-		});
+		super(EVENT_QUEUE_INVOKER);
+		this.timeSlicedInvoker = null;
+	}
+	
+	/**
+	 * Instantiates a new AWT promise factory with priority lanes, using a {@link PriorityDeferredInvoker}. All lanes
+	 * share a single pending {@link EventQueue#invokeLater} call. Promises created by this factory run their callbacks
+	 * in the lowest lane; use {@link #withPriority(int)} to obtain factories for higher lanes.
+	 * 
+	 * @param laneCount the number of priority lanes
+	 * @throws IllegalArgumentException if {@code laneCount} is less than 1
+	 */
+	public AwtPromiseFactory(final int laneCount) {
+		super(new PriorityDeferredInvoker(EVENT_QUEUE_INVOKER, laneCount));
+		this.timeSlicedInvoker = null;
+	}
+	
+	/**
+	 * Instantiates a new AWT promise factory that runs callbacks in time slices, using a
+	 * {@link TimeSlicedDeferredInvoker}. When many callbacks are pending, they run until the frame budget is used up,
+	 * after which the rest are rescheduled, so that the event dispatch thread can process repaints and input in
+	 * between.
+	 * 
+	 * @param frameBudget the maximum time callbacks may run before yielding to other events
+	 * @param unit the time unit of {@code frameBudget}
+	 * @throws IllegalArgumentException if {@code frameBudget} is not positive
+	 */
+	public AwtPromiseFactory(final long frameBudget, final TimeUnit unit) {
+		this(new TimeSlicedDeferredInvoker(EVENT_QUEUE_INVOKER, frameBudget, unit));
+	}
+	
+	private AwtPromiseFactory(final TimeSlicedDeferredInvoker timeSlicedInvoker) {
+		super(timeSlicedInvoker);
+		this.timeSlicedInvoker = timeSlicedInvoker;
+	}
+	
+	/**
+	 * Returns the time-sliced invoker running this factory's callbacks, to access its statistics.
+	 * 
+	 * @return the time-sliced invoker, or {@code null} if this factory was not created with a frame budget
+	 */
+	public final TimeSlicedDeferredInvoker getTimeSlicedInvoker() {
+		return timeSlicedInvoker;
+	}
+	
+	/**
+	 * Returns whether the current thread is the event dispatch thread.
+	 */
+	@Override
+	protected boolean isInvokerThread() {
+		return EventQueue.isDispatchThread();
 	}
 	
 	/**
@@ -0,0 +1,47 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.core;
+
+import org.lucidfox.jpromises.PromiseFactory;
+
+/**
+ * <p>
+ * Records the call site of {@code then} (or one of the methods delegating to it, such as {@code thenApply}),
+ * when async stack traces are enabled with {@link PromiseFactory#setAsyncStackTraceSampling}.
+ * </p><p>
+ * If the callback registered at that call site throws an exception, this exception is attached to it as a
+ * suppressed exception, so that the stack trace of the rejection reason shows where the callback came from, and not
+ * only the deferred invoker frames it was eventually executed in.
+ * </p><p>
+ * This exception is never thrown by the library.
+ * </p>
+ */
+public class AsyncCallSiteException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Instantiates a new {@code AsyncCallSiteException}, capturing the current stack trace.
+	 */
+	public AsyncCallSiteException() {
+		super("Callback registered at");
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.core;
+
+import org.lucidfox.jpromises.PromiseFactory;
+
+/**
+ * A function combining the values of 6 thenables, used by
+ * {@link PromiseFactory#zip(Thenable, Thenable, Thenable, Thenable, Thenable, Thenable, Combiner6) PromiseFactory.zip}.
+ *
+ * @param <A> the value type of the first thenable
+ * @param <B> the value type of the second thenable
+ * @param <C> the value type of the third thenable
+ * @param <D> the value type of the fourth thenable
+ * @param <E> the value type of the fifth thenable
+ * @param <F> the value type of the sixth thenable
+ * @param <R> the type of the combined value
+ */
+public interface Combiner6<A, B, C, D, E, F, R> {
+	/**
+	 * Combines the values of the thenables, once all of them are resolved.
+	 *
+	 * @param a the value of the first thenable
+	 * @param b the value of the second thenable
+	 * @param c the value of the third thenable
+	 * @param d the value of the fourth thenable
+	 * @param e the value of the fifth thenable
+	 * @param f the value of the sixth thenable
+	 * @return the combined value
+	 * @throws Exception if the values cannot be combined, which rejects the combined promise
+	 */
+	R combine(A a, B b, C c, D d, E e, F f) throws Exception;
+}
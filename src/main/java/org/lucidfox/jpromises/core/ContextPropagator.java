@@ -0,0 +1,59 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.core;
+
+import org.lucidfox.jpromises.PromiseFactory;
+
+/**
+ * <p>
+ * Carries thread-bound context, such as a logging MDC, a tracing span or a security context, across the thread
+ * hops performed by promises. Propagators are registered with {@link PromiseFactory#addContextPropagator}.
+ * </p><p>
+ * The context is captured in the thread calling {@code then} (or {@code promiseAsync} and the methods built on it),
+ * and restored around the execution of the callback (or promise handler) in whatever thread the
+ * {@link DeferredInvoker} (or {@link AsyncRunner}) runs it.
+ * </p><p>
+ * Capturing happens on every {@code then} call, so it should be cheap. Ideally, the context is kept in an
+ * immutable object that is replaced rather than modified when it changes, so that capturing it is a single
+ * reference read.
+ * </p>
+ *
+ * @param <C> the type of the context
+ */
+public interface ContextPropagator<C> {
+	/**
+	 * Captures the context of the current thread.
+	 * 
+	 * @return the current context (may be {@code null})
+	 */
+	C capture();
+	
+	/**
+	 * Installs the given context in the current thread, and returns the context that was installed before.
+	 * The library calls this method again with the returned context after the callback finishes, to undo
+	 * the change.
+	 * 
+	 * @param context the context to install, previously returned by {@link #capture} or {@link #restore}
+	 * @return the context that was installed in the current thread before this call
+	 */
+	C restore(C context);
+}
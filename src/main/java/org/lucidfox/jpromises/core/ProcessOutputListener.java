@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.core;
+
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+
+/**
+ * Receives the output of a child process incrementally, as passed to
+ * {@link PromiseFactory#onExit(Process, ProcessOutputListener, ProcessOutputListener)}.
+ */
+@GwtIncompatible("java.lang.Process")
+public interface ProcessOutputListener {
+	/**
+	 * Called with the next block of output. The buffer is reused after this method returns, so its contents must be
+	 * copied if they are needed later.
+	 *
+	 * @param buffer the buffer containing the output
+	 * @param offset the position of the output in the buffer
+	 * @param length the number of bytes of output
+	 * @throws Exception Signals that an error occurred when handling the output. The promise for the process exit
+	 * 			is then rejected with it, and no more output is delivered.
+	 */
+	void onOutput(byte[] buffer, int offset, int length) throws Exception;
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.core;
+
+import org.lucidfox.jpromises.PromiseFactory;
+
+/**
+ * <p>
+ * Service provider interface for observing the lifecycle of promises created by a {@link PromiseFactory}, set with
+ * {@link PromiseFactory#setInstrumentation}. It can be used to collect metrics such as the number of pending
+ * promises, the time promises stay pending, callback execution time, and the number of tasks waiting in the
+ * deferred invoker.
+ * </p><p>
+ * Methods of this interface are called on the hot path of every promise operation, from arbitrary threads, and
+ * must therefore be cheap and thread-safe. They must not throw exceptions.
+ * </p><p>
+ * Timing is left to the implementation: methods that start a measurement return an opaque {@code long} token
+ * (typically a {@link System#nanoTime()} timestamp), which is passed back to the method that ends it.
+ * </p>
+ */
+public interface PromiseInstrumentation {
+	/**
+	 * Called when a promise is created.
+	 * 
+	 * @return a token passed to {@link #promiseSettled} when the promise is resolved or rejected
+	 */
+	long promiseCreated();
+	
+	/**
+	 * Called when a promise is resolved or rejected.
+	 * 
+	 * @param token the token returned by {@link #promiseCreated} for this promise
+	 * @param resolved {@code true} if the promise was resolved, {@code false} if it was rejected
+	 */
+	void promiseSettled(long token, boolean resolved);
+	
+	/**
+	 * Called before a resolve or reject callback passed to {@code then} is executed.
+	 * 
+	 * @return a token passed to {@link #callbackFinished} when the callback returns or throws
+	 */
+	long callbackStarted();
+	
+	/**
+	 * Called after a resolve or reject callback passed to {@code then} returns or throws.
+	 * 
+	 * @param token the token returned by the matching call to {@link #callbackStarted}
+	 */
+	void callbackFinished(long token);
+	
+	/**
+	 * Called when a task is submitted to the factory's {@link DeferredInvoker}.
+	 */
+	void taskScheduled();
+	
+	/**
+	 * Called when a task previously submitted to the factory's {@link DeferredInvoker} starts running.
+	 */
+	void taskStarted();
+}
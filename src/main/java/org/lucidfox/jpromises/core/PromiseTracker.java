@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.core;
+
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+
+/**
+ * <p>
+ * Service provider interface for debugging tools that keep track of individual promises created by a
+ * {@link PromiseFactory}, set with {@link PromiseFactory#setPromiseTracker}. Unlike
+ * {@link PromiseInstrumentation}, which only observes counts and timings, a tracker gets access to each promise
+ * and the resolver that settles it, which allows it to find promises that stay pending, or can never be settled
+ * because their resolver was dropped.
+ * </p><p>
+ * Tracking every promise is expensive, so this interface is intended for development and staging environments.
+ * Implementations must be thread-safe, must not throw exceptions, and should not keep strong references to promises
+ * or resolvers, to avoid interfering with garbage collection.
+ * </p>
+ */
+public interface PromiseTracker {
+	/**
+	 * Called when a promise is created, before its handler runs.
+	 * 
+	 * @param promise the new promise
+	 * @param resolver the resolver that settles the promise; the promise can no longer be settled once this object
+	 * 			becomes unreachable
+	 * @return a token passed to {@link #promiseSettled} when the promise is resolved or rejected
+	 */
+	Object promiseCreated(Promise<?> promise, Resolver<?> resolver);
+	
+	/**
+	 * Called when a promise is resolved or rejected.
+	 * 
+	 * @param token the token returned by {@link #promiseCreated} for the promise
+	 */
+	void promiseSettled(Object token);
+}
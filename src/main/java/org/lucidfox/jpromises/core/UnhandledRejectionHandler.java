@@ -0,0 +1,48 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.core;
+
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+
+/**
+ * <p>
+ * A handler notified of promises that were rejected while nothing was listening for their outcome, set with
+ * {@link PromiseFactory#setUnhandledRejectionHandler}.
+ * </p><p>
+ * A rejected promise is considered unhandled if, by the time the deferred invoker runs the task processing its
+ * rejection, no {@code then} callbacks (including {@code done} and similar methods) have been added to it. This is
+ * the same rule used by JavaScript environments such as Node.js, which check for unhandled rejections at the end
+ * of each turn of the event loop. Note that a rejection without a reject callback propagates to the promise
+ * returned by {@code then}; in a chain without any reject callbacks, it is the last promise of the chain that
+ * is reported.
+ * </p>
+ */
+public interface UnhandledRejectionHandler {
+	/**
+	 * Called when a rejected promise is detected to be unhandled. This method is called by the deferred invoker.
+	 * 
+	 * @param promise the rejected promise
+	 * @param exception the rejection reason
+	 */
+	void onUnhandledRejection(Promise<?> promise, Throwable exception);
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.debug;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+import org.lucidfox.jpromises.core.PromiseTracker;
+import org.lucidfox.jpromises.core.Resolver;
+
+/**
+ * <p>
+ * A {@link PromiseTracker} that keeps a registry of pending promises, along with their creation time and,
+ * optionally, the stack trace of the code that created them. It is intended for finding promises that stay
+ * pending forever in development and staging environments.
+ * </p><p>
+ * The registry holds promises and their resolvers only weakly. If a resolver is garbage-collected while its promise
+ * is still pending, the promise can never be settled; this is reported as a leak to the {@link LeakHandler}, if any,
+ * and counted in {@link #getLeakCount()}. Leaks are detected without a background thread: collected resolvers
+ * are expunged whenever a promise is created, and whenever the registry is queried.
+ * </p><p>
+ * The registry is backed by a {@link ConcurrentHashMap}, which is internally striped, so registering and removing
+ * promises from many threads does not contend on a single lock.
+ * </p><p>
+ * Typical usage:
+ * </p>
+ * <pre>
+ * PendingPromiseRegistry registry = new PendingPromiseRegistry(true);
+ * promiseFactory.setPromiseTracker(registry);
+ * registry.registerMBean(new ObjectName("org.lucidfox.jpromises:type=PendingPromiseRegistry,name=ui"));
+ * </pre>
+ */
+@GwtIncompatible("java.lang.ref")
+public class PendingPromiseRegistry implements PromiseTracker, PendingPromiseRegistryMBean {
+	/**
+	 * A handler notified when a resolver is garbage-collected while its promise is still pending.
+	 */
+	public interface LeakHandler {
+		/**
+		 * Called when a leaked promise is detected.
+		 * 
+		 * @param creationSite the stack trace of the promise creation, or {@code null} if creation sites
+		 * 			are not recorded
+		 * @param ageNanos the time in nanoseconds between the promise's creation and the detection of the leak
+		 */
+		void onLeak(Throwable creationSite, long ageNanos);
+	}
+	
+	private final boolean recordCreationSites;
+	private final Set<Entry> entries = Collections.newSetFromMap(new ConcurrentHashMap<Entry, Boolean>());
+	private final ReferenceQueue<Resolver<?>> collectedResolvers = new ReferenceQueue<>();
+	private final AtomicLong leakCount = new AtomicLong();
+	private volatile LeakHandler leakHandler;
+	
+	/**
+	 * Instantiates a new registry.
+	 * 
+	 * @param recordCreationSites {@code true} to record the stack trace of every promise creation, which makes
+	 * 			dumps and leak reports much more useful, but also makes creating promises much more expensive
+	 */
+	public PendingPromiseRegistry(final boolean recordCreationSites) {
+		this.recordCreationSites = recordCreationSites;
+	}
+	
+	/**
+	 * Convenience method to create a registry and set it as the promise tracker of the given promise factory.
+	 * 
+	 * @param factory the promise factory to track
+	 * @param recordCreationSites {@code true} to record the stack trace of every promise creation
+	 * @return the new registry
+	 */
+	public static PendingPromiseRegistry install(final PromiseFactory factory, final boolean recordCreationSites) {
+		final PendingPromiseRegistry registry = new PendingPromiseRegistry(recordCreationSites);
+		factory.setPromiseTracker(registry);
+		return registry;
+	}
+	
+	/**
+	 * Sets the handler notified of leaked promises.
+	 * 
+	 * @param leakHandler the leak handler, or {@code null} to only count leaks
+	 */
+	public void setLeakHandler(final LeakHandler leakHandler) {
+		this.leakHandler = leakHandler;
+	}
+
+	@Override
+	public Object promiseCreated(final Promise<?> promise, final Resolver<?> resolver) {
+		expungeCollected();
+		
+		final Entry entry = new Entry(promise, resolver, collectedResolvers,
+				recordCreationSites ? new Throwable("Promise created") : null);
+		entries.add(entry);
+		return entry;
+	}
+
+	@Override
+	public void promiseSettled(final Object token) {
+		entries.remove(token);
+	}
+	
+	@Override
+	public int getPendingCount() {
+		expungeCollected();
+		return entries.size();
+	}
+	
+	@Override
+	public long getLeakCount() {
+		expungeCollected();
+		return leakCount.get();
+	}
+	
+	/**
+	 * Returns the stack traces of the oldest pending promises, up to {@code count}, from oldest to newest.
+	 * If creation sites are not recorded, the returned stack traces are empty.
+	 * 
+	 * @param count the maximum number of promises to return
+	 * @return the creation sites of the oldest pending promises
+	 */
+	public List<Throwable> getOldest(final int count) {
+		final List<Throwable> result = new ArrayList<>();
+		
+		for (final Entry entry: oldest(count)) {
+			result.add(entry.creationSite == null ? new Throwable("Promise created") : entry.creationSite);
+		}
+		
+		return result;
+	}
+
+	@Override
+	public String dumpOldest(final int count) {
+		final long now = System.nanoTime();
+		final StringWriter writer = new StringWriter();
+		final PrintWriter out = new PrintWriter(writer);
+		final List<Entry> oldest = oldest(count);
+		
+		out.println(entries.size() + " pending promise(s), showing the oldest " + oldest.size());
+		
+		for (final Entry entry: oldest) {
+			final Promise<?> promise = entry.promise.get();
+			out.println(promise + ", pending for " + TimeUnit.NANOSECONDS.toMillis(now - entry.createdNanos) + " ms");
+			
+			if (entry.creationSite != null) {
+				entry.creationSite.printStackTrace(out);
+			}
+		}
+		
+		out.flush();
+		return writer.toString();
+	}
+	
+	private List<Entry> oldest(final int count) {
+		expungeCollected();
+		
+		final List<Entry> snapshot = new ArrayList<>(entries);
+		
+		Collections.sort(snapshot, new Comparator<Entry>() {
+			@Override
+			public int compare(final Entry e1, final Entry e2) {
+				// Overflow-safe comparison of nanoTime values
+				final long diff = e1.createdNanos - e2.createdNanos;
+				return diff < 0 ? -1 : diff > 0 ? 1 : 0;
+			}
+		});
+		
+		return snapshot.subList(0, Math.min(count, snapshot.size()));
+	}
+	
+	private void expungeCollected() {
+		Reference<? extends Resolver<?>> reference;
+		
+		while ((reference = collectedResolvers.poll()) != null) {
+			final Entry entry = (Entry) reference;
+			
+			if (entries.remove(entry)) {
+				// Still pending, and now it never will be settled
+				leakCount.incrementAndGet();
+				
+				final LeakHandler handler = leakHandler;
+				
+				if (handler != null) {
+					handler.onLeak(entry.creationSite, System.nanoTime() - entry.createdNanos);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Registers this object as an MBean with the platform MBean server.
+	 * 
+	 * @param name the object name to register this MBean under
+	 * @return the registered MBean instance
+	 * @throws JMException if registration fails
+	 */
+	public ObjectInstance registerMBean(final ObjectName name) throws JMException {
+		return registerMBean(ManagementFactory.getPlatformMBeanServer(), name);
+	}
+	
+	/**
+	 * Registers this object as an MBean with the given MBean server.
+	 * 
+	 * @param server the MBean server
+	 * @param name the object name to register this MBean under
+	 * @return the registered MBean instance
+	 * @throws JMException if registration fails
+	 */
+	public ObjectInstance registerMBean(final MBeanServer server, final ObjectName name) throws JMException {
+		return server.registerMBean(this, name);
+	}
+	
+	/**
+	 * Returns a short summary of the registry's state, for debugging purposes.
+	 */
+	@Override
+	public String toString() {
+		return "PendingPromiseRegistry (pending = " + getPendingCount() + ", leaks = " + getLeakCount() + ")";
+	}
+	
+	/**
+	 * A pending promise. The entry itself is a weak reference to the promise's resolver, so it is enqueued when
+	 * the resolver is collected. It uses identity equality, so removal from the set is cheap.
+	 */
+	private static final class Entry extends WeakReference<Resolver<?>> {
+		private final WeakReference<Promise<?>> promise;
+		private final long createdNanos = System.nanoTime();
+		private final Throwable creationSite;
+		
+		private Entry(final Promise<?> promise, final Resolver<?> resolver, final ReferenceQueue<Resolver<?>> queue,
+				final Throwable creationSite) {
+			super(resolver, queue);
+			this.promise = new WeakReference<Promise<?>>(promise);
+			this.creationSite = creationSite;
+		}
+	}
+}
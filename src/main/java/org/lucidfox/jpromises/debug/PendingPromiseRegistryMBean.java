@@ -0,0 +1,49 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.debug;
+
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+
+/**
+ * JMX management interface for {@link PendingPromiseRegistry}.
+ */
+@GwtIncompatible("javax.management")
+public interface PendingPromiseRegistryMBean {
+	/**
+	 * @return the number of currently pending tracked promises
+	 */
+	int getPendingCount();
+	
+	/**
+	 * @return the number of promises whose resolver was garbage-collected while they were still pending
+	 */
+	long getLeakCount();
+	
+	/**
+	 * Returns a human-readable description of the oldest pending promises, including their age and, if enabled,
+	 * the stack trace of their creation.
+	 * 
+	 * @param count the maximum number of promises to describe
+	 * @return the description
+	 */
+	String dumpOldest(int count);
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.forkjoin;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+import org.lucidfox.jpromises.core.AsyncRunner;
+import org.lucidfox.jpromises.core.DeferredInvoker;
+
+/**
+ * <p>
+ * A {@link DeferredInvoker} and {@link AsyncRunner} backed by a {@link ForkJoinPool}.
+ * </p><p>
+ * Tasks submitted from a worker thread of the same pool are forked onto that worker's own deque, so a continuation
+ * usually runs on the same thread that settled its promise, while its data is still in cache. Idle workers can
+ * still steal it. Tasks submitted from any other thread go to the pool's shared submission queue.
+ * </p>
+ */
+@GwtIncompatible("java.util.concurrent.ForkJoinPool")
+public class ForkJoinInvoker implements DeferredInvoker, AsyncRunner {
+	private final ForkJoinPool pool;
+	
+	/**
+	 * Instantiates a new invoker running tasks on the given pool.
+	 * 
+	 * @param pool the fork/join pool
+	 */
+	public ForkJoinInvoker(final ForkJoinPool pool) {
+		if (pool == null) {
+			throw new NullPointerException("pool");
+		}
+		
+		this.pool = pool;
+	}
+	
+	/**
+	 * @return the fork/join pool this invoker runs tasks on
+	 */
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	@Override
+	public void invokeDeferred(final Runnable task) {
+		submit(task);
+	}
+
+	@Override
+	public void runAsync(final Runnable task) {
+		submit(task);
+	}
+	
+	private void submit(final Runnable task) {
+		final Thread currentThread = Thread.currentThread();
+		
+		if (currentThread instanceof ForkJoinWorkerThread
+				&& ((ForkJoinWorkerThread) currentThread).getPool() == pool) {
+			new RunnableTask(task).fork();
+		} else {
+			pool.execute(task);
+		}
+	}
+	
+	/**
+	 * Adapts a {@link Runnable} to a {@link ForkJoinTask}. Unlike {@link ForkJoinTask#adapt(Runnable)}, exceptions
+	 * are not silently kept in a task nobody joins, but passed to the worker's uncaught exception handler, the
+	 * same as with tasks submitted via {@link ForkJoinPool#execute(Runnable)}.
+	 */
+	@SuppressWarnings("serial")
+	private static final class RunnableTask extends ForkJoinTask<Void> {
+		private final Runnable task;
+		
+		private RunnableTask(final Runnable task) {
+			this.task = task;
+		}
+
+		@Override
+		public Void getRawResult() {
+			return null;
+		}
+
+		@Override
+		protected void setRawResult(final Void value) {
+			// No result
+		}
+
+		@Override
+		protected boolean exec() {
+			try {
+				task.run();
+			} catch (final RuntimeException | Error e) {
+				final Thread currentThread = Thread.currentThread();
+				currentThread.getUncaughtExceptionHandler().uncaughtException(currentThread, e);
+			}
+			
+			return true;
+		}
+	}
+	
+	/**
+	 * Returns a short description of this invoker, for debugging purposes.
+	 */
+	@Override
+	public String toString() {
+		return "ForkJoinInvoker (" + pool + ")";
+	}
+}
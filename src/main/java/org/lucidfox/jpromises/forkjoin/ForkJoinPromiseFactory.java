@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.forkjoin;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+import org.lucidfox.jpromises.core.AsyncRunner;
+
+/**
+ * <p>
+ * A {@link PromiseFactory} whose {@code then} callbacks run on a {@link ForkJoinPool}, using a
+ * {@link ForkJoinInvoker}. Callbacks of a promise settled on a worker thread are queued on that worker, keeping
+ * continuation chains local to one core unless other workers are idle and steal them.
+ * </p><p>
+ * The same invoker is available as an {@link AsyncRunner}, so that the initial work of a pipeline can be started
+ * on the pool as well:
+ * </p>
+ * <pre>
+ * ForkJoinPromiseFactory factory = new ForkJoinPromiseFactory(pool);
+ * factory.supplyAsync(supplier, factory.getAsyncRunner()).then(...);
+ * </pre>
+ */
+@GwtIncompatible("java.util.concurrent.ForkJoinPool")
+public class ForkJoinPromiseFactory extends PromiseFactory {
+	private final ForkJoinInvoker invoker;
+	
+	/**
+	 * Instantiates a new fork/join promise factory using the given pool.
+	 * 
+	 * @param pool the fork/join pool to run callbacks on
+	 */
+	public ForkJoinPromiseFactory(final ForkJoinPool pool) {
+		this(new ForkJoinInvoker(pool));
+	}
+	
+	private ForkJoinPromiseFactory(final ForkJoinInvoker invoker) {
+		super(invoker);
+		this.invoker = invoker;
+	}
+	
+	/**
+	 * Returns an {@link AsyncRunner} running tasks on this factory's pool, for use with {@code promiseAsync},
+	 * {@code runAsync} and {@code supplyAsync}.
+	 * 
+	 * @return the async runner
+	 */
+	public final AsyncRunner getAsyncRunner() {
+		return invoker;
+	}
+	
+	/**
+	 * @return the fork/join pool this factory runs callbacks on
+	 */
+	public final ForkJoinPool getPool() {
+		return invoker.getPool();
+	}
+	
+	/**
+	 * Returns the string {@code "ForkJoinPromiseFactory"}.
+	 */
+	@Override
+	public String toString() {
+		return "ForkJoinPromiseFactory";
+	}
+}
@@ -21,24 +21,51 @@
  */
 package org.lucidfox.jpromises.gwt;
 
+import java.util.LinkedList;
+
 import org.lucidfox.jpromises.PromiseFactory;
 import org.lucidfox.jpromises.annotation.GwtCompatible;
 import org.lucidfox.jpromises.core.DeferredInvoker;
 
+import com.google.gwt.core.client.GWT;
 import com.google.gwt.core.client.Scheduler;
 import com.google.gwt.core.client.Scheduler.ScheduledCommand;
 
 /**
- * A {@link PromiseFactory} specialized for GWT. It uses the GWT/JavaScript event queue for deferred invocation,
- * using {@link Scheduler#scheduleDeferred}.
+ * <p>
+ * A {@link PromiseFactory} specialized for GWT. By default, it uses the GWT/JavaScript event queue for deferred
+ * invocation, using {@link Scheduler#scheduleDeferred}.
+ * </p><p>
+ * Deferred commands are macrotasks, which browsers may delay by several milliseconds each, adding up over long
+ * promise chains. Alternatively, the factory can run callbacks as a JavaScript microtask, like native promises do:
+ * see {@link #GwtPromiseFactory(boolean)}.
+ * </p>
  */
 @GwtCompatible // Duh
 public class GwtPromiseFactory extends PromiseFactory {
 	/**
-	 * Instantiates a new GWT promise factory.
+	 * Instantiates a new GWT promise factory using {@link Scheduler#scheduleDeferred}.
 	 */
 	public GwtPromiseFactory() {
-		super(new DeferredInvoker() {
+		this(false);
+	}
+	
+	/**
+	 * <p>
+	 * Instantiates a new GWT promise factory, optionally running callbacks as microtasks.
+	 * </p><p>
+	 * In microtask mode, pending callbacks are queued on the Java side, and a single microtask (scheduled with
+	 * {@code queueMicrotask}, or a native {@code Promise} if it is not available) runs the whole batch, including
+	 * callbacks queued while it runs. Callbacks then run right after the current event handler, before the browser
+	 * renders or processes other events. If the browser supports neither, {@link Scheduler#scheduleFinally} is
+	 * used instead, which also runs before control returns to the browser.
+	 * </p>
+	 * 
+	 * @param microtasks {@code true} to run callbacks as microtasks, {@code false} to use
+	 * 			{@link Scheduler#scheduleDeferred}
+	 */
+	public GwtPromiseFactory(final boolean microtasks) {
+		super(microtasks ? new MicrotaskInvoker() : new DeferredInvoker() {
 			@Override
 			public void invokeDeferred(final Runnable task) {
 				Scheduler.get().scheduleDeferred(new ScheduledCommand() {
@@ -51,6 +78,14 @@ public class GwtPromiseFactory extends PromiseFactory {
 		});
 	}
 	
+	/**
+	 * Returns {@code true}, since JavaScript code runs on a single thread.
+	 */
+	@Override
+	protected boolean isInvokerThread() {
+		return true;
+	}
+	
 	/**
 	 * Returns the string {@code "GwtPromiseFactory"}.
 	 */
@@ -58,4 +93,63 @@ public class GwtPromiseFactory extends PromiseFactory {
 	public String toString() {
 		return "GwtPromiseFactory";
 	}
+	
+	/**
+	 * Batches deferred tasks into a single microtask. JavaScript is single-threaded, so the queue needs no locking.
+	 * Like GWT's own scheduler, the microtask reports a failing task to the uncaught exception handler and goes on
+	 * with the next one.
+	 */
+	private static final class MicrotaskInvoker implements DeferredInvoker, ScheduledCommand {
+		private final LinkedList<Runnable> tasks = new LinkedList<>();
+		private boolean drainScheduled;
+		
+		@Override
+		public void invokeDeferred(final Runnable task) {
+			tasks.add(task);
+			
+			if (!drainScheduled) {
+				drainScheduled = true;
+				scheduleDrain();
+			}
+		}
+		
+		private void scheduleDrain() {
+			if (!queueMicrotask(this)) {
+				Scheduler.get().scheduleFinally(this);
+			}
+		}
+		
+		@Override
+		public void execute() {
+			Runnable task;
+			
+			while ((task = tasks.poll()) != null) {
+				try {
+					task.run();
+				} catch (final Throwable e) {
+					GWT.reportUncaughtException(e);
+				}
+			}
+			
+			drainScheduled = false;
+		}
+		
+		private static native boolean queueMicrotask(ScheduledCommand command) /*-{
+			var callback = $entry(function() {
+				command.@com.google.gwt.core.client.Scheduler.ScheduledCommand::execute()();
+			});
+			
+			if (typeof $wnd.queueMicrotask === "function") {
+				$wnd.queueMicrotask(callback);
+				return true;
+			}
+			
+			if (typeof $wnd.Promise === "function") {
+				$wnd.Promise.resolve().then(callback);
+				return true;
+			}
+			
+			return false;
+		}-*/;
+	}
 }
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.gwt;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * A read-only {@link java.util.List} view over a native JavaScript array, as returned by the {@link JsPromise}
+ * combinators. Elements are read straight from the array, without copying or wrapping them.
+ *
+ * @param <E> the element type
+ */
+public final class JsArrayList<E> extends AbstractList<E> implements RandomAccess {
+	private final JavaScriptObject array;
+	
+	/* package */ JsArrayList(final JavaScriptObject array) {
+		this.array = array;
+	}
+	
+	/**
+	 * @return the underlying JavaScript array
+	 */
+	public JavaScriptObject getJsArray() {
+		return array;
+	}
+
+	@Override
+	public E get(final int index) {
+		if (index < 0 || index >= size()) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+		}
+		
+		return get0(array, index);
+	}
+
+	@Override
+	public int size() {
+		return size0(array);
+	}
+	
+	private static native <E> E get0(JavaScriptObject array, int index) /*-{
+		return array[index];
+	}-*/;
+	
+	private static native int size0(JavaScriptObject array) /*-{
+		return array.length;
+	}-*/;
+}
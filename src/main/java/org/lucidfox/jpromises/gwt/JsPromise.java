@@ -21,6 +21,10 @@
  */
 package org.lucidfox.jpromises.gwt;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
 import org.lucidfox.jpromises.core.RejectCallback;
 import org.lucidfox.jpromises.core.ResolveCallback;
 import org.lucidfox.jpromises.core.Thenable;
@@ -104,6 +108,194 @@ public final class JsPromise<V> extends JavaScriptObject implements Thenable<V>
 		return promise;
 	}-*/;
 	
+	/**
+	 * Returns a native promise that is resolved when all the given thenables are resolved, or rejected when at least
+	 * one of them is rejected, using the native {@code Promise.all}. The value of the returned promise is a list
+	 * view over the native array of results, in the order passed.
+	 *
+	 * @param <V> the lower bound for value types of the combined thenables
+	 * @param thenables the thenables to combine
+	 * @return the combined JS promise
+	 */
+	@SafeVarargs
+	public static <V> JsPromise<List<V>> all(final Thenable<? extends V>... thenables) {
+		return all(Arrays.asList(thenables));
+	}
+	
+	/**
+	 * Returns a native promise that is resolved when all the given thenables are resolved, or rejected when at least
+	 * one of them is rejected, using the native {@code Promise.all}. The value of the returned promise is a list
+	 * view over the native array of results, in the iteration order of {@code thenables}.
+	 * 
+	 * <p>
+	 * Native promises are passed to the browser as is. Other thenables are converted with {@link #deferResolve}.
+	 * </p>
+	 *
+	 * @param <V> the lower bound for value types of the combined thenables
+	 * @param thenables the thenables to combine
+	 * @return the combined JS promise
+	 */
+	public static <V> JsPromise<List<V>> all(final Collection<? extends Thenable<? extends V>> thenables) {
+		return all0(toNativeArray(thenables));
+	}
+	
+	/**
+	 * Returns a native promise that is settled the same way as the first of the given thenables to be settled,
+	 * using the native {@code Promise.race}.
+	 *
+	 * @param <V> the lower bound for value types of the thenables
+	 * @param thenables the thenables to race
+	 * @return the JS promise settled by the first thenable to settle
+	 */
+	@SafeVarargs
+	public static <V> JsPromise<V> race(final Thenable<? extends V>... thenables) {
+		return race(Arrays.asList(thenables));
+	}
+	
+	/**
+	 * Returns a native promise that is settled the same way as the first of the given thenables to be settled,
+	 * using the native {@code Promise.race}.
+	 *
+	 * @param <V> the lower bound for value types of the thenables
+	 * @param thenables the thenables to race
+	 * @return the JS promise settled by the first thenable to settle
+	 */
+	public static <V> JsPromise<V> race(final Collection<? extends Thenable<? extends V>> thenables) {
+		return race0(toNativeArray(thenables));
+	}
+	
+	/**
+	 * Returns a native promise that is resolved when all the given thenables are settled, using the native
+	 * {@code Promise.allSettled}, or an equivalent fallback if the browser does not support it. The returned
+	 * promise is never rejected. Its value is a list view over the native array of outcomes, in the order passed.
+	 *
+	 * @param <V> the lower bound for value types of the combined thenables
+	 * @param thenables the thenables to combine
+	 * @return the combined JS promise
+	 */
+	@SafeVarargs
+	public static <V> JsPromise<List<JsSettledResult<V>>> allSettled(final Thenable<? extends V>... thenables) {
+		return allSettled(Arrays.asList(thenables));
+	}
+	
+	/**
+	 * Returns a native promise that is resolved when all the given thenables are settled, using the native
+	 * {@code Promise.allSettled}, or an equivalent fallback if the browser does not support it. The returned
+	 * promise is never rejected. Its value is a list view over the native array of outcomes, in the iteration
+	 * order of {@code thenables}.
+	 *
+	 * @param <V> the lower bound for value types of the combined thenables
+	 * @param thenables the thenables to combine
+	 * @return the combined JS promise
+	 */
+	public static <V> JsPromise<List<JsSettledResult<V>>> allSettled(
+			final Collection<? extends Thenable<? extends V>> thenables) {
+		return allSettled0(toNativeArray(thenables));
+	}
+	
+	/**
+	 * Returns a native promise that is resolved with the value of the first of the given thenables to be resolved,
+	 * or rejected when all of them are rejected, using the native {@code Promise.any}, or an equivalent fallback
+	 * if the browser does not support it.
+	 *
+	 * @param <V> the lower bound for value types of the thenables
+	 * @param thenables the thenables to combine
+	 * @return the JS promise resolved by the first thenable to resolve
+	 */
+	@SafeVarargs
+	public static <V> JsPromise<V> any(final Thenable<? extends V>... thenables) {
+		return any(Arrays.asList(thenables));
+	}
+	
+	/**
+	 * Returns a native promise that is resolved with the value of the first of the given thenables to be resolved,
+	 * or rejected when all of them are rejected, using the native {@code Promise.any}, or an equivalent fallback
+	 * if the browser does not support it.
+	 *
+	 * @param <V> the lower bound for value types of the thenables
+	 * @param thenables the thenables to combine
+	 * @return the JS promise resolved by the first thenable to resolve
+	 */
+	public static <V> JsPromise<V> any(final Collection<? extends Thenable<? extends V>> thenables) {
+		return any0(toNativeArray(thenables));
+	}
+	
+	private static JavaScriptObject toNativeArray(final Collection<? extends Thenable<?>> thenables) {
+		final JavaScriptObject array = JavaScriptObject.createArray();
+		
+		for (final Thenable<?> thenable: thenables) {
+			push(array, coerceToNativePromise(thenable));
+		}
+		
+		return array;
+	}
+	
+	private static native void push(JavaScriptObject array, Object value) /*-{
+		array.push(value);
+	}-*/;
+	
+	private static native <V> JsPromise<List<V>> all0(JavaScriptObject promises) /*-{
+		return $wnd.Promise.all(promises).then(function(values) {
+			return @JsArrayList::new(Lcom/google/gwt/core/client/JavaScriptObject;)(values);
+		});
+	}-*/;
+	
+	private static native <V> JsPromise<V> race0(JavaScriptObject promises) /*-{
+		return $wnd.Promise.race(promises);
+	}-*/;
+	
+	private static native <V> JsPromise<List<JsSettledResult<V>>> allSettled0(JavaScriptObject promises) /*-{
+		var settled;
+		
+		if ($wnd.Promise.allSettled) {
+			settled = $wnd.Promise.allSettled(promises);
+		} else {
+			settled = $wnd.Promise.all(promises.map(function(promise) {
+				return $wnd.Promise.resolve(promise).then(function(value) {
+					return { status: "fulfilled", value: value };
+				}, function(reason) {
+					return { status: "rejected", reason: reason };
+				});
+			}));
+		}
+		
+		return settled.then(function(results) {
+			return @JsArrayList::new(Lcom/google/gwt/core/client/JavaScriptObject;)(results);
+		});
+	}-*/;
+	
+	private static native <V> JsPromise<V> any0(JavaScriptObject promises) /*-{
+		if ($wnd.Promise.any) {
+			return $wnd.Promise.any(promises);
+		}
+		
+		return new $wnd.Promise(function(resolve, reject) {
+			var remaining = promises.length;
+			var errors = new Array(remaining);
+			
+			var rejectAll = function() {
+				var error = new Error("All promises were rejected");
+				error.errors = errors;
+				reject(error);
+			};
+			
+			if (remaining === 0) {
+				rejectAll();
+				return;
+			}
+			
+			promises.forEach(function(promise, index) {
+				$wnd.Promise.resolve(promise).then(resolve, function(reason) {
+					errors[index] = reason;
+					
+					if (--remaining === 0) {
+						rejectAll();
+					}
+				});
+			});
+		});
+	}-*/;
+	
 	private static <V> void handle(final JsPromiseHandler<V> handler, final JavaScriptObject resolve,
 			final JavaScriptObject reject, final JsPromise<V> promise) {
 		try {
@@ -251,7 +443,7 @@ public final class JsPromise<V> extends JavaScriptObject implements Thenable<V>
 		}
 	}
 	
-	private static Exception toException(final Object jsError) {
+	/* package */ static Exception toException(final Object jsError) {
 		return new JavaScriptException(jsError);
 	}
 	
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.gwt;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * GWT JSNI type wrapping the outcome of a single promise passed to {@link JsPromise#allSettled}: a native
+ * {@code {status, value}} or {@code {status, reason}} object.
+ *
+ * @param <V> value type
+ */
+public final class JsSettledResult<V> extends JavaScriptObject {
+	protected JsSettledResult() { }
+	
+	/**
+	 * @return {@code true} if the promise was resolved, {@code false} if it was rejected
+	 */
+	public native boolean isResolved() /*-{
+		return this.status === "fulfilled";
+	}-*/;
+	
+	/**
+	 * @return the value of the promise if it was resolved, or {@code null} if it was rejected
+	 */
+	public native V getValue() /*-{
+		return this.status === "fulfilled" ? this.value : null;
+	}-*/;
+	
+	/**
+	 * @return the rejection reason of the promise if it was rejected, or {@code null} if it was resolved
+	 */
+	public native Throwable getException() /*-{
+		if (this.status === "fulfilled") {
+			return null;
+		}
+		
+		return this.reason && this.reason.__jsPromiseWrappedException
+				|| @JsPromise::toException(Ljava/lang/Object;)(this.reason);
+	}-*/;
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.invoker;
+
+import org.lucidfox.jpromises.annotation.GwtCompatible;
+import org.lucidfox.jpromises.core.DeferredInvoker;
+
+/**
+ * <p>
+ * A task that runs queued tasks in passes on a platform invoker, for invokers that multiplex their own queue onto
+ * it. At most one drain is posted at a time. Each pass runs tasks until the queue is empty or
+ * {@link #continuePass()} returns {@code false}, and the drain posts itself again if tasks remain, so that the
+ * platform gets to process its own events between passes.
+ * </p><p>
+ * If a task throws, the exception propagates to the platform invoker, and the drain is posted again for the
+ * remaining tasks.
+ * </p><p>
+ * The queue is guarded by the lock of this object: {@link #poll()} and {@link #isEmpty()} are called while holding
+ * it, and subclasses must hold it when adding tasks.
+ * </p>
+ */
+@GwtCompatible
+/* package */ abstract class DrainTask implements Runnable {
+	private final DeferredInvoker platformInvoker;
+	// Guarded by this
+	private boolean scheduled;
+	
+	/* package */ DrainTask(final DeferredInvoker platformInvoker) {
+		this.platformInvoker = platformInvoker;
+	}
+	
+	/* package */ final DeferredInvoker getPlatformInvoker() {
+		return platformInvoker;
+	}
+	
+	/**
+	 * Posts this drain to the platform invoker, unless it is already posted. Called after a task has been queued.
+	 */
+	/* package */ final void schedule() {
+		synchronized (this) {
+			if (scheduled) {
+				return;
+			}
+			
+			scheduled = true;
+		}
+		
+		platformInvoker.invokeDeferred(this);
+	}
+	
+	/**
+	 * Removes and returns the next task to run, or returns {@code null} if there is none.
+	 */
+	protected abstract Runnable poll();
+	
+	protected abstract boolean isEmpty();
+	
+	/**
+	 * Called at the start of each pass, before any task runs.
+	 */
+	protected abstract void startPass();
+	
+	/**
+	 * Called after each task; returns whether the current pass may run another one.
+	 */
+	protected abstract boolean continuePass();
+	
+	/**
+	 * Called when a pass stops because {@link #continuePass()} returned {@code false}, with tasks still queued.
+	 */
+	protected void yielded() {
+		// Nothing by default
+	}
+	
+	@Override
+	public final void run() {
+		boolean exhausted = false;
+		
+		try {
+			startPass();
+			Runnable task;
+			
+			while ((task = next()) != null) {
+				task.run();
+				
+				if (!continuePass()) {
+					exhausted = true;
+					break;
+				}
+			}
+		} finally {
+			finishPass(exhausted);
+		}
+	}
+	
+	private synchronized Runnable next() {
+		return poll();
+	}
+	
+	private void finishPass(final boolean exhausted) {
+		synchronized (this) {
+			if (isEmpty()) {
+				scheduled = false;
+				return;
+			}
+		}
+		
+		if (exhausted) {
+			yielded();
+		}
+		
+		platformInvoker.invokeDeferred(this);
+	}
+}
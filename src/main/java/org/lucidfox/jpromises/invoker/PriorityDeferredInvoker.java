@@ -0,0 +1,234 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.invoker;
+
+import java.util.LinkedList;
+
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.annotation.GwtCompatible;
+import org.lucidfox.jpromises.core.DeferredInvoker;
+
+/**
+ * <p>
+ * A {@link DeferredInvoker} that multiplexes several priority lanes onto a single platform invoker. Tasks are queued
+ * in per-lane FIFO queues, and at most one task is posted to the platform invoker at a time. That task drains
+ * the lanes, always taking the oldest task from the highest-priority non-empty lane. It runs at most as many tasks
+ * as were queued when it started, and then posts itself again if tasks remain, so that tasks queued by the
+ * callbacks it runs wait for the platform to process its pending events.
+ * </p><p>
+ * To guarantee progress for low-priority lanes, after {@code starvationLimit} consecutive tasks have been taken
+ * from higher lanes while a lower lane was waiting, the next task is taken from the lowest non-empty lane.
+ * </p><p>
+ * Lanes are numbered from 0 (the lowest priority) to {@code laneCount - 1}. This invoker itself submits tasks to
+ * lane 0; {@link #lane(int)} returns invokers for the other lanes. A {@link PromiseFactory} created with this
+ * invoker can create factories bound to other lanes with {@link PromiseFactory#withPriority(int)}, so that all
+ * callbacks of a promise chain run with the same priority:
+ * </p>
+ * <pre>
+ * PromiseFactory factory = new PromiseFactory(new PriorityDeferredInvoker(platformInvoker, 3));
+ * PromiseFactory urgentFactory = factory.withPriority(2);
+ * </pre>
+ */
+@GwtCompatible
+public class PriorityDeferredInvoker implements DeferredInvoker {
+	/**
+	 * The default number of consecutive higher-priority tasks after which a waiting lower-priority task runs.
+	 */
+	public static final int DEFAULT_STARVATION_LIMIT = 16;
+	
+	private final Lanes lanes;
+	private final int priority;
+	
+	/**
+	 * Instantiates a new priority invoker with the default starvation limit.
+	 * 
+	 * @param platformInvoker the underlying invoker used to post tasks draining the lanes
+	 * @param laneCount the number of priority lanes
+	 * @throws IllegalArgumentException if {@code laneCount} is less than 1
+	 */
+	public PriorityDeferredInvoker(final DeferredInvoker platformInvoker, final int laneCount) {
+		this(platformInvoker, laneCount, DEFAULT_STARVATION_LIMIT);
+	}
+	
+	/**
+	 * Instantiates a new priority invoker.
+	 * 
+	 * @param platformInvoker the underlying invoker used to post tasks draining the lanes
+	 * @param laneCount the number of priority lanes
+	 * @param starvationLimit the number of consecutive tasks taken from higher lanes, after which a task from
+	 * 			the lowest waiting lane is run
+	 * @throws IllegalArgumentException if {@code laneCount} or {@code starvationLimit} is less than 1
+	 */
+	public PriorityDeferredInvoker(final DeferredInvoker platformInvoker, final int laneCount,
+			final int starvationLimit) {
+		if (laneCount < 1) {
+			throw new IllegalArgumentException("Invalid lane count: " + laneCount);
+		}
+		
+		if (starvationLimit < 1) {
+			throw new IllegalArgumentException("Invalid starvation limit: " + starvationLimit);
+		}
+		
+		this.lanes = new Lanes(platformInvoker, laneCount, starvationLimit);
+		this.priority = 0;
+		lanes.invokers[0] = this;
+		
+		for (int i = 1; i < laneCount; i++) {
+			lanes.invokers[i] = new PriorityDeferredInvoker(lanes, i);
+		}
+	}
+	
+	private PriorityDeferredInvoker(final Lanes lanes, final int priority) {
+		this.lanes = lanes;
+		this.priority = priority;
+	}
+	
+	/**
+	 * Returns the invoker submitting tasks to the given lane. The returned invoker shares its queues with this one.
+	 * 
+	 * @param priority the lane number, from 0 (lowest priority) to {@code getLaneCount() - 1}
+	 * @return the invoker for the lane
+	 * @throws IllegalArgumentException if there is no such lane
+	 */
+	public PriorityDeferredInvoker lane(final int priority) {
+		if (priority < 0 || priority >= lanes.invokers.length) {
+			throw new IllegalArgumentException("Invalid priority: " + priority);
+		}
+		
+		return lanes.invokers[priority];
+	}
+	
+	/**
+	 * @return the lane this invoker submits tasks to
+	 */
+	public int getPriority() {
+		return priority;
+	}
+	
+	/**
+	 * @return the number of priority lanes
+	 */
+	public int getLaneCount() {
+		return lanes.invokers.length;
+	}
+
+	@Override
+	public void invokeDeferred(final Runnable task) {
+		lanes.add(priority, task);
+	}
+	
+	/**
+	 * Returns a short description of this invoker, for debugging purposes.
+	 */
+	@Override
+	public String toString() {
+		return "PriorityDeferredInvoker (lane " + priority + " of " + lanes.invokers.length + ", platformInvoker = "
+				+ lanes.getPlatformInvoker() + ")";
+	}
+	
+	/**
+	 * The state shared between the invokers of all lanes. Each pass runs at most the tasks that were queued when it
+	 * started, so that a chain of callbacks queuing further callbacks cannot hold the platform thread indefinitely.
+	 */
+	private static final class Lanes extends DrainTask {
+		private final int starvationLimit;
+		private final PriorityDeferredInvoker[] invokers;
+		private final LinkedList<Runnable>[] queues;
+		private int queuedCount;
+		private int starvationCount;
+		// Only used by the running pass
+		private int passBudget;
+		
+		private Lanes(final DeferredInvoker platformInvoker, final int laneCount, final int starvationLimit) {
+			super(platformInvoker);
+			this.starvationLimit = starvationLimit;
+			this.invokers = new PriorityDeferredInvoker[laneCount];
+			
+			@SuppressWarnings({ "unchecked", "rawtypes" })
+			final LinkedList<Runnable>[] newQueues = new LinkedList[laneCount];
+			this.queues = newQueues;
+			
+			for (int i = 0; i < laneCount; i++) {
+				queues[i] = new LinkedList<>();
+			}
+		}
+		
+		private void add(final int priority, final Runnable task) {
+			synchronized (this) {
+				queues[priority].add(task);
+				queuedCount++;
+			}
+			
+			schedule();
+		}
+		
+		@Override
+		protected synchronized void startPass() {
+			passBudget = queuedCount;
+		}
+		
+		@Override
+		protected boolean continuePass() {
+			return --passBudget > 0;
+		}
+		
+		@Override
+		protected boolean isEmpty() {
+			return queuedCount == 0;
+		}
+		
+		@Override
+		protected Runnable poll() {
+			int highest = -1;
+			int lowest = -1;
+			
+			for (int i = queues.length - 1; i >= 0; i--) {
+				if (!queues[i].isEmpty()) {
+					if (highest < 0) {
+						highest = i;
+					}
+					
+					lowest = i;
+				}
+			}
+			
+			if (highest < 0) {
+				starvationCount = 0;
+				return null;
+			}
+			
+			queuedCount--;
+			
+			if (highest == lowest) {
+				starvationCount = 0;
+				return queues[highest].poll();
+			}
+			
+			if (++starvationCount > starvationLimit) {
+				starvationCount = 0;
+				return queues[lowest].poll();
+			}
+			
+			return queues[highest].poll();
+		}
+	}
+}
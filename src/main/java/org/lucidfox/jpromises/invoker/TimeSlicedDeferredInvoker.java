@@ -0,0 +1,183 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.invoker;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+import org.lucidfox.jpromises.core.DeferredInvoker;
+
+/**
+ * <p>
+ * A {@link DeferredInvoker} that runs queued tasks in time slices on a platform invoker, so that a burst of
+ * callbacks does not block the platform's event loop.
+ * </p><p>
+ * Tasks are queued, and at most one slice task is posted to the platform invoker at a time. The slice runs queued
+ * tasks until the frame budget is used up, and then posts itself again and returns, letting the platform process
+ * pending events (such as repaints and input) before the remaining tasks run. A slice always runs at least one task,
+ * so a single callback longer than the budget delays other events, but cannot stall the queue.
+ * </p><p>
+ * The invoker keeps statistics on the number of slices run, the number of slices that had to yield with tasks still
+ * queued, and the longest single task.
+ * </p>
+ */
+@GwtIncompatible("System.nanoTime")
+public class TimeSlicedDeferredInvoker implements DeferredInvoker {
+	private final long frameBudgetNanos;
+	private final Slice slice;
+	
+	// Only written by the running slice, and slices never overlap
+	private volatile long sliceCount;
+	private volatile long yieldCount;
+	private volatile long longestTaskNanos;
+	
+	/**
+	 * Instantiates a new time-sliced invoker.
+	 * 
+	 * @param platformInvoker the underlying invoker used to post slices
+	 * @param frameBudget the maximum time a slice keeps running tasks
+	 * @param unit the time unit of {@code frameBudget}
+	 * @throws IllegalArgumentException if {@code frameBudget} is not positive
+	 */
+	public TimeSlicedDeferredInvoker(final DeferredInvoker platformInvoker, final long frameBudget,
+			final TimeUnit unit) {
+		if (frameBudget <= 0) {
+			throw new IllegalArgumentException("Invalid frame budget: " + frameBudget);
+		}
+		
+		this.frameBudgetNanos = unit.toNanos(frameBudget);
+		this.slice = new Slice(platformInvoker);
+	}
+	
+	/**
+	 * @return the frame budget, in nanoseconds
+	 */
+	public long getFrameBudgetNanos() {
+		return frameBudgetNanos;
+	}
+	
+	/**
+	 * @return the number of slices run so far
+	 */
+	public long getSliceCount() {
+		return sliceCount;
+	}
+	
+	/**
+	 * @return the number of slices that used up the frame budget and yielded with tasks still queued
+	 */
+	public long getYieldCount() {
+		return yieldCount;
+	}
+	
+	/**
+	 * @return the running time of the longest single task so far, in nanoseconds
+	 */
+	public long getLongestTaskNanos() {
+		return longestTaskNanos;
+	}
+	
+	/**
+	 * @return the number of tasks waiting to run
+	 */
+	public int getQueuedTaskCount() {
+		synchronized (slice) {
+			return slice.tasks.size();
+		}
+	}
+	
+	/**
+	 * Resets the slice statistics to zero.
+	 */
+	public void resetStatistics() {
+		sliceCount = 0;
+		yieldCount = 0;
+		longestTaskNanos = 0;
+	}
+
+	@Override
+	public void invokeDeferred(final Runnable task) {
+		synchronized (slice) {
+			slice.tasks.add(task);
+		}
+		
+		slice.schedule();
+	}
+	
+	/**
+	 * Returns a short description of this invoker, for debugging purposes.
+	 */
+	@Override
+	public String toString() {
+		return "TimeSlicedDeferredInvoker (frameBudget = " + TimeUnit.NANOSECONDS.toMicros(frameBudgetNanos)
+				+ " us, platformInvoker = " + slice.getPlatformInvoker() + ")";
+	}
+	
+	/**
+	 * Runs queued tasks until the frame budget is used up.
+	 */
+	private final class Slice extends DrainTask {
+		private final Queue<Runnable> tasks = new ArrayDeque<>();
+		private long sliceStart;
+		private long taskStart;
+		
+		private Slice(final DeferredInvoker platformInvoker) {
+			super(platformInvoker);
+		}
+		
+		@Override
+		protected Runnable poll() {
+			return tasks.poll();
+		}
+		
+		@Override
+		protected boolean isEmpty() {
+			return tasks.isEmpty();
+		}
+		
+		@Override
+		protected void startPass() {
+			sliceCount++;
+			sliceStart = System.nanoTime();
+			taskStart = sliceStart;
+		}
+		
+		@Override
+		protected boolean continuePass() {
+			final long now = System.nanoTime();
+			
+			if (now - taskStart > longestTaskNanos) {
+				longestTaskNanos = now - taskStart;
+			}
+			
+			taskStart = now;
+			return now - sliceStart < frameBudgetNanos;
+		}
+		
+		@Override
+		protected void yielded() {
+			yieldCount++;
+		}
+	}
+}
@@ -40,25 +40,53 @@ import org.lucidfox.jpromises.core.DeferredInvoker;
  */
 @GwtIncompatible("javafx.application.Platform")
 public class JavaFXPromiseFactory extends PromiseFactory {
+	private final JavaFXDeferredInvoker invoker;
+	
 	/**
 	 * Instantiates a new AWT promise factory.
 	 * 
 	 * @throws RuntimeException If JavaFX is not available on the system
 	 */
 	public JavaFXPromiseFactory() {
-		super(new JavaFXDeferredInvoker());
+		this(new JavaFXDeferredInvoker());
+	}
+	
+	private JavaFXPromiseFactory(final JavaFXDeferredInvoker invoker) {
+		super(invoker);
+		this.invoker = invoker;
+	}
+	
+	/**
+	 * Returns whether the current thread is the JavaFX application thread.
+	 */
+	@Override
+	protected boolean isInvokerThread() {
+		return invoker.isFxApplicationThread();
 	}
 	
 	private static final class JavaFXDeferredInvoker implements DeferredInvoker {
 		private final Method platformRunLater;
+		private final Method platformIsFxApplicationThread;
 		
 		private JavaFXDeferredInvoker() {
 			try {
-				platformRunLater = Class.forName("javafx.application.Platform").getMethod("runLater", Runnable.class);
+				final Class<?> platform = Class.forName("javafx.application.Platform");
+				platformRunLater = platform.getMethod("runLater", Runnable.class);
+				platformIsFxApplicationThread = platform.getMethod("isFxApplicationThread");
 			} catch (final NoSuchMethodException | SecurityException | ClassNotFoundException e) {
 				throw new RuntimeException(e);
 			}
 		}
+		
+		private boolean isFxApplicationThread() {
+			try {
+				return (Boolean) platformIsFxApplicationThread.invoke(null);
+			} catch (final IllegalAccessException | IllegalArgumentException e) {
+				throw new RuntimeException(e);
+			} catch (final InvocationTargetException e) {
+				throw new RuntimeException(e.getCause());
+			}
+		}
 
 		@Override
 		public void invokeDeferred(final Runnable task) {
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+
+/**
+ * <p>
+ * A concurrent histogram of durations in nanoseconds, with power-of-two buckets. Recording a value is lock-free
+ * and uses striped counters, so it stays cheap under contention.
+ * </p><p>
+ * Bucket {@code i} counts values in the range [2<sup>i-1</sup>, 2<sup>i</sup>), with bucket 0 counting zero values.
+ * Percentiles are therefore approximate, and are reported as the upper bound of the bucket they fall into.
+ * </p>
+ */
+@GwtIncompatible("java.util.concurrent.atomic.AtomicLongArray")
+public final class LatencyHistogram {
+	private static final int BUCKET_COUNT = 64;
+	// Counter indices after the buckets
+	private static final int COUNT = BUCKET_COUNT;
+	private static final int SUM = BUCKET_COUNT + 1;
+	
+	private final StripedCounters counters = new StripedCounters(BUCKET_COUNT + 2);
+	private final AtomicLong max = new AtomicLong();
+	
+	/**
+	 * Instantiates a new, empty histogram.
+	 */
+	public LatencyHistogram() {
+		// Nothing to initialize
+	}
+	
+	/**
+	 * Records a duration. Negative durations, which can only result from a misbehaving clock, are recorded as zero.
+	 * 
+	 * @param nanos the duration in nanoseconds
+	 */
+	public void record(final long nanos) {
+		final long value = Math.max(nanos, 0);
+		counters.increment(Math.min(BUCKET_COUNT - Long.numberOfLeadingZeros(value), BUCKET_COUNT - 1));
+		counters.increment(COUNT);
+		counters.add(SUM, value);
+		
+		// The maximum rarely changes once warmed up, so check before attempting to write it
+		long currentMax;
+		
+		while (value > (currentMax = max.get())) {
+			if (max.compareAndSet(currentMax, value)) {
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of recorded durations.
+	 * 
+	 * @return the number of recorded durations
+	 */
+	public long getCount() {
+		return counters.sum(COUNT);
+	}
+	
+	/**
+	 * Returns the mean of recorded durations.
+	 * 
+	 * @return the mean duration in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public double getMean() {
+		final long n = counters.sum(COUNT);
+		return n == 0 ? 0 : (double) counters.sum(SUM) / n;
+	}
+	
+	/**
+	 * Returns the longest recorded duration.
+	 * 
+	 * @return the longest duration in nanoseconds, or 0 if nothing has been recorded
+	 */
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * Returns an approximation of the given percentile of recorded durations, as the upper bound of the bucket
+	 * containing it.
+	 * 
+	 * @param percentile the percentile, between 0 and 100
+	 * @return the approximate percentile in nanoseconds, or 0 if nothing has been recorded
+	 * @throws IllegalArgumentException if {@code percentile} is out of range
+	 */
+	public long getPercentile(final double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException("Percentile out of range: " + percentile);
+		}
+		
+		final long[] snapshot = new long[BUCKET_COUNT];
+		long total = 0;
+		
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = counters.sum(i);
+			total += snapshot[i];
+		}
+		
+		if (total == 0) {
+			return 0;
+		}
+		
+		final long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+		long seen = 0;
+		
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += snapshot[i];
+			
+			if (seen >= rank) {
+				return i == 0 ? 0 : Math.min((1L << i) - 1, getMax());
+			}
+		}
+		
+		return getMax();
+	}
+	
+	/**
+	 * Returns a short summary of the histogram, for debugging purposes.
+	 */
+	@Override
+	public String toString() {
+		return "LatencyHistogram (count = " + getCount() + ", mean = " + getMean() + ", p99 = " + getPercentile(99)
+				+ ", max = " + getMax() + ")";
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.metrics;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectInstance;
+import javax.management.ObjectName;
+
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+import org.lucidfox.jpromises.core.PromiseInstrumentation;
+
+/**
+ * <p>
+ * A {@link PromiseInstrumentation} that collects counts of created, resolved, rejected and pending promises, the
+ * number of outstanding deferred invoker tasks, and histograms of time-to-settle and callback execution time.
+ * </p><p>
+ * All counters are striped per thread, so updating them from many threads does not cause contention.
+ * Timing requires a {@link System#nanoTime()} call per measured event; if only counts are needed, timing can be
+ * disabled with {@link #PromiseMetrics(boolean)}.
+ * </p><p>
+ * Typical usage:
+ * </p>
+ * <pre>
+ * PromiseMetrics metrics = new PromiseMetrics();
+ * promiseFactory.setInstrumentation(metrics);
+ * metrics.registerMBean(new ObjectName("org.lucidfox.jpromises:type=PromiseMetrics,name=ui"));
+ * </pre>
+ */
+@GwtIncompatible("java.util.concurrent.atomic.AtomicLongArray")
+public class PromiseMetrics implements PromiseInstrumentation, PromiseMetricsMBean {
+	// Counter indices
+	private static final int CREATED = 0;
+	private static final int RESOLVED = 1;
+	private static final int REJECTED = 2;
+	private static final int TASKS_SCHEDULED = 3;
+	private static final int TASKS_STARTED = 4;
+	private static final int CALLBACKS = 5;
+	
+	private final boolean timed;
+	
+	private final StripedCounters counters = new StripedCounters(6);
+	private final LatencyHistogram settleTime = new LatencyHistogram();
+	private final LatencyHistogram callbackTime = new LatencyHistogram();
+	
+	/**
+	 * Instantiates a new {@code PromiseMetrics} object that collects both counts and timings.
+	 */
+	public PromiseMetrics() {
+		this(true);
+	}
+	
+	/**
+	 * Instantiates a new {@code PromiseMetrics} object.
+	 * 
+	 * @param timed {@code true} to collect timing histograms in addition to counts, {@code false} to collect
+	 * 			only counts
+	 */
+	public PromiseMetrics(final boolean timed) {
+		this.timed = timed;
+	}
+	
+	/**
+	 * Convenience method to create a {@code PromiseMetrics} object and set it as the instrumentation of the given
+	 * promise factory.
+	 * 
+	 * @param factory the promise factory to instrument
+	 * @return the new metrics object
+	 */
+	public static PromiseMetrics install(final PromiseFactory factory) {
+		final PromiseMetrics metrics = new PromiseMetrics();
+		factory.setInstrumentation(metrics);
+		return metrics;
+	}
+
+	@Override
+	public long promiseCreated() {
+		counters.increment(CREATED);
+		return timed ? System.nanoTime() : 0;
+	}
+
+	@Override
+	public void promiseSettled(final long token, final boolean isResolved) {
+		counters.increment(isResolved ? RESOLVED : REJECTED);
+		
+		if (timed) {
+			settleTime.record(System.nanoTime() - token);
+		}
+	}
+
+	@Override
+	public long callbackStarted() {
+		counters.increment(CALLBACKS);
+		return timed ? System.nanoTime() : 0;
+	}
+
+	@Override
+	public void callbackFinished(final long token) {
+		if (timed) {
+			callbackTime.record(System.nanoTime() - token);
+		}
+	}
+
+	@Override
+	public void taskScheduled() {
+		counters.increment(TASKS_SCHEDULED);
+	}
+
+	@Override
+	public void taskStarted() {
+		counters.increment(TASKS_STARTED);
+	}
+	
+	@Override
+	public long getCreatedCount() {
+		return counters.sum(CREATED);
+	}
+	
+	@Override
+	public long getResolvedCount() {
+		return counters.sum(RESOLVED);
+	}
+	
+	@Override
+	public long getRejectedCount() {
+		return counters.sum(REJECTED);
+	}
+	
+	@Override
+	public long getPendingCount() {
+		// Read the settled counts first, so that a concurrent settlement cannot make the result negative
+		final long settled = counters.sum(RESOLVED) + counters.sum(REJECTED);
+		return Math.max(counters.sum(CREATED) - settled, 0);
+	}
+	
+	@Override
+	public long getOutstandingTaskCount() {
+		final long started = counters.sum(TASKS_STARTED);
+		return Math.max(counters.sum(TASKS_SCHEDULED) - started, 0);
+	}
+	
+	/**
+	 * Returns the histogram of times between creating a promise and settling it. It is empty if timing is disabled.
+	 * 
+	 * @return the time-to-settle histogram
+	 */
+	public LatencyHistogram getSettleTimeHistogram() {
+		return settleTime;
+	}
+	
+	/**
+	 * Returns the histogram of {@code then} callback execution times. It is empty if timing is disabled.
+	 * 
+	 * @return the callback execution time histogram
+	 */
+	public LatencyHistogram getCallbackTimeHistogram() {
+		return callbackTime;
+	}
+	
+	@Override
+	public double getSettleTimeMean() {
+		return settleTime.getMean();
+	}
+	
+	@Override
+	public long getSettleTime99thPercentile() {
+		return settleTime.getPercentile(99);
+	}
+	
+	@Override
+	public long getSettleTimeMax() {
+		return settleTime.getMax();
+	}
+	
+	@Override
+	public long getCallbackCount() {
+		return counters.sum(CALLBACKS);
+	}
+	
+	@Override
+	public double getCallbackTimeMean() {
+		return callbackTime.getMean();
+	}
+	
+	@Override
+	public long getCallbackTime99thPercentile() {
+		return callbackTime.getPercentile(99);
+	}
+	
+	@Override
+	public long getCallbackTimeMax() {
+		return callbackTime.getMax();
+	}
+	
+	/**
+	 * Registers this object as an MBean with the platform MBean server.
+	 * 
+	 * @param name the object name to register this MBean under
+	 * @return the registered MBean instance
+	 * @throws JMException if registration fails
+	 */
+	public ObjectInstance registerMBean(final ObjectName name) throws JMException {
+		return registerMBean(ManagementFactory.getPlatformMBeanServer(), name);
+	}
+	
+	/**
+	 * Registers this object as an MBean with the given MBean server.
+	 * 
+	 * @param server the MBean server
+	 * @param name the object name to register this MBean under
+	 * @return the registered MBean instance
+	 * @throws JMException if registration fails
+	 */
+	public ObjectInstance registerMBean(final MBeanServer server, final ObjectName name) throws JMException {
+		return server.registerMBean(this, name);
+	}
+	
+	/**
+	 * Returns a short summary of the collected metrics, for debugging purposes.
+	 */
+	@Override
+	public String toString() {
+		return "PromiseMetrics (created = " + getCreatedCount() + ", resolved = " + getResolvedCount()
+				+ ", rejected = " + getRejectedCount() + ", pending = " + getPendingCount()
+				+ ", outstandingTasks = " + getOutstandingTaskCount() + ")";
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.metrics;
+
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+
+/**
+ * JMX management interface for {@link PromiseMetrics}. All durations are in nanoseconds.
+ */
+@GwtIncompatible("javax.management")
+public interface PromiseMetricsMBean {
+	/**
+	 * @return the number of promises created
+	 */
+	long getCreatedCount();
+	
+	/**
+	 * @return the number of promises resolved
+	 */
+	long getResolvedCount();
+	
+	/**
+	 * @return the number of promises rejected
+	 */
+	long getRejectedCount();
+	
+	/**
+	 * @return the number of promises created, but not yet resolved or rejected
+	 */
+	long getPendingCount();
+	
+	/**
+	 * @return the number of tasks submitted to the deferred invoker that have not started running yet
+	 */
+	long getOutstandingTaskCount();
+	
+	/**
+	 * @return the mean time between creating a promise and settling it
+	 */
+	double getSettleTimeMean();
+	
+	/**
+	 * @return the approximate 99th percentile of the time between creating a promise and settling it
+	 */
+	long getSettleTime99thPercentile();
+	
+	/**
+	 * @return the longest time between creating a promise and settling it
+	 */
+	long getSettleTimeMax();
+	
+	/**
+	 * @return the number of executed {@code then} callbacks
+	 */
+	long getCallbackCount();
+	
+	/**
+	 * @return the mean execution time of {@code then} callbacks
+	 */
+	double getCallbackTimeMean();
+	
+	/**
+	 * @return the approximate 99th percentile of execution time of {@code then} callbacks
+	 */
+	long getCallbackTime99thPercentile();
+	
+	/**
+	 * @return the longest execution time of a {@code then} callback
+	 */
+	long getCallbackTimeMax();
+}
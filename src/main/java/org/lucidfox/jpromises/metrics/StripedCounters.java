@@ -0,0 +1,85 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+
+/**
+ * <p>
+ * A fixed number of long counters, striped so that threads updating them concurrently rarely touch the same cache
+ * line. This is what {@code LongAdder} provides on Java 8, built on Java 7 primitives.
+ * </p><p>
+ * Each stripe holds a copy of every counter, and a thread always updates the stripe selected by its identity hash.
+ * Stripes are padded to a multiple of the cache line size, so threads on different stripes do not contend. Sums are
+ * not atomic snapshots: counters updated while they are summed may or may not be included.
+ * </p>
+ */
+@GwtIncompatible("java.util.concurrent.atomic.AtomicLongArray")
+/* package */ final class StripedCounters {
+	// Longs per 64-byte cache line
+	private static final int LINE = 8;
+	private static final int STRIPE_COUNT = stripeCount();
+	
+	private final int width;
+	private final AtomicLongArray cells;
+	
+	/**
+	 * Instantiates a new set of counters, all zero.
+	 * 
+	 * @param counterCount the number of counters
+	 */
+	/* package */ StripedCounters(final int counterCount) {
+		this.width = (counterCount + LINE - 1) / LINE * LINE;
+		this.cells = new AtomicLongArray(width * STRIPE_COUNT);
+	}
+	
+	/**
+	 * Returns the smallest power of two not less than the number of processors, so that a stripe can be selected
+	 * with a mask.
+	 */
+	private static int stripeCount() {
+		final int processors = Runtime.getRuntime().availableProcessors();
+		return Math.min(Integer.highestOneBit(Math.max(processors, 1) * 2 - 1), 64);
+	}
+	
+	/* package */ void increment(final int counter) {
+		add(counter, 1);
+	}
+	
+	/* package */ void add(final int counter, final long delta) {
+		final int hash = System.identityHashCode(Thread.currentThread());
+		final int stripe = (hash ^ hash >>> 16) & STRIPE_COUNT - 1;
+		cells.getAndAdd(stripe * width + counter, delta);
+	}
+	
+	/* package */ long sum(final int counter) {
+		long sum = 0;
+		
+		for (int i = counter; i < cells.length(); i += width) {
+			sum += cells.get(i);
+		}
+		
+		return sum;
+	}
+}
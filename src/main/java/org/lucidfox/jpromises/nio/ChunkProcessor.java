@@ -0,0 +1,45 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.nio;
+
+import java.nio.ByteBuffer;
+
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+
+/**
+ * A function processing one chunk of a file, used by {@link MappedFileProcessor}.
+ *
+ * @param <R> the type of the result of processing a chunk
+ */
+@GwtIncompatible("java.nio.ByteBuffer")
+public interface ChunkProcessor<R> {
+	/**
+	 * Processes a chunk of the file. The buffer is a read-only view of the mapped file, from the start of the chunk
+	 * to its end, and is only valid for the duration of the call.
+	 *
+	 * @param chunk the contents of the chunk
+	 * @param offset the position of the chunk in the file
+	 * @return the result for this chunk
+	 * @throws Exception Signals that an error occurred when processing the chunk.
+	 */
+	R process(ByteBuffer chunk, long offset) throws Exception;
+}
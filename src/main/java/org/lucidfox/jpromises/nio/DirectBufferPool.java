@@ -0,0 +1,197 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.nio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+
+/**
+ * <p>
+ * A thread-safe pool of direct {@link ByteBuffer}s, organized in power-of-two size classes.
+ * </p><p>
+ * Direct buffers are expensive to allocate and are only freed when garbage collected, but I/O on them avoids the
+ * copy through a temporary direct buffer that the JDK makes for heap buffers. {@link #acquire} returns a buffer from
+ * the smallest size class that fits the requested size, with its limit set to that size. Buffers returned with
+ * {@link #release} are kept for reuse, up to a fixed number per size class. Requests larger than the largest size
+ * class are served by a fresh buffer that is not pooled.
+ * </p><p>
+ * A buffer must not be used after it is released, and must not be released twice.
+ * </p>
+ */
+@GwtIncompatible("java.nio.ByteBuffer")
+public class DirectBufferPool {
+	/**
+	 * The default size of the smallest size class, 4 KiB.
+	 */
+	public static final int DEFAULT_MIN_SIZE = 4 * 1024;
+	
+	/**
+	 * The default size of the largest size class, 1 MiB.
+	 */
+	public static final int DEFAULT_MAX_SIZE = 1024 * 1024;
+	
+	/**
+	 * The default number of free buffers kept per size class.
+	 */
+	public static final int DEFAULT_BUFFERS_PER_CLASS = 16;
+	
+	private final int minShift;
+	private final int maxSize;
+	private final int buffersPerClass;
+	private final ConcurrentLinkedQueue<ByteBuffer>[] freeBuffers;
+	// Approximate sizes of the free lists, which ConcurrentLinkedQueue cannot report in constant time
+	private final AtomicIntegerArray freeCounts;
+	
+	/**
+	 * Instantiates a new pool with the default size classes, from {@value #DEFAULT_MIN_SIZE} to
+	 * {@value #DEFAULT_MAX_SIZE} bytes, keeping up to {@value #DEFAULT_BUFFERS_PER_CLASS} free buffers per class.
+	 */
+	public DirectBufferPool() {
+		this(DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_BUFFERS_PER_CLASS);
+	}
+	
+	/**
+	 * Instantiates a new pool.
+	 * 
+	 * @param minSize the size of the smallest size class, a power of two
+	 * @param maxSize the size of the largest size class, a power of two not smaller than {@code minSize}
+	 * @param buffersPerClass the maximum number of free buffers kept per size class
+	 * @throws IllegalArgumentException if the sizes are not powers of two, or are out of order, or if
+	 * 			{@code buffersPerClass} is negative
+	 */
+	public DirectBufferPool(final int minSize, final int maxSize, final int buffersPerClass) {
+		if (minSize <= 0 || Integer.bitCount(minSize) != 1) {
+			throw new IllegalArgumentException("Minimum size is not a power of two: " + minSize);
+		}
+		
+		if (maxSize < minSize || Integer.bitCount(maxSize) != 1) {
+			throw new IllegalArgumentException("Maximum size is not a power of two at least " + minSize + ": "
+					+ maxSize);
+		}
+		
+		if (buffersPerClass < 0) {
+			throw new IllegalArgumentException("Negative buffer count: " + buffersPerClass);
+		}
+		
+		this.minShift = Integer.numberOfTrailingZeros(minSize);
+		this.maxSize = maxSize;
+		this.buffersPerClass = buffersPerClass;
+		
+		final int classCount = Integer.numberOfTrailingZeros(maxSize) - minShift + 1;
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		final ConcurrentLinkedQueue<ByteBuffer>[] newFreeBuffers = new ConcurrentLinkedQueue[classCount];
+		freeBuffers = newFreeBuffers;
+		
+		for (int i = 0; i < classCount; i++) {
+			freeBuffers[i] = new ConcurrentLinkedQueue<>();
+		}
+		
+		freeCounts = new AtomicIntegerArray(classCount);
+	}
+	
+	/**
+	 * Returns a cleared direct buffer with a limit of {@code size} bytes and a capacity of at least {@code size}.
+	 * 
+	 * @param size the number of bytes needed
+	 * @return the buffer
+	 * @throws IllegalArgumentException if {@code size} is negative
+	 */
+	public ByteBuffer acquire(final int size) {
+		if (size < 0) {
+			throw new IllegalArgumentException("Negative buffer size: " + size);
+		}
+		
+		if (size > maxSize) {
+			return ByteBuffer.allocateDirect(size);
+		}
+		
+		final int sizeClass = sizeClass(size);
+		ByteBuffer buffer = freeBuffers[sizeClass].poll();
+		
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(1 << (sizeClass + minShift));
+		} else {
+			freeCounts.decrementAndGet(sizeClass);
+			buffer.clear();
+		}
+		
+		buffer.limit(size);
+		return buffer;
+	}
+	
+	/**
+	 * Returns a buffer obtained from {@link #acquire} to the pool. Buffers that do not belong to a size class of this
+	 * pool, and buffers in excess of the per-class limit, are left to the garbage collector.
+	 * 
+	 * @param buffer the buffer to release
+	 */
+	public void release(final ByteBuffer buffer) {
+		final int capacity = buffer.capacity();
+		
+		if (!buffer.isDirect() || capacity > maxSize || Integer.bitCount(capacity) != 1
+				|| capacity < 1 << minShift) {
+			return;
+		}
+		
+		final int sizeClass = Integer.numberOfTrailingZeros(capacity) - minShift;
+		
+		if (freeCounts.incrementAndGet(sizeClass) > buffersPerClass) {
+			freeCounts.decrementAndGet(sizeClass);
+			return;
+		}
+		
+		freeBuffers[sizeClass].offer(buffer);
+	}
+	
+	/**
+	 * Returns the approximate number of free buffers currently kept by this pool, across all size classes.
+	 * 
+	 * @return the number of free buffers
+	 */
+	public int getFreeBufferCount() {
+		int count = 0;
+		
+		for (int i = 0; i < freeCounts.length(); i++) {
+			count += freeCounts.get(i);
+		}
+		
+		return count;
+	}
+	
+	private int sizeClass(final int size) {
+		if (size <= 1 << minShift) {
+			return 0;
+		}
+		
+		// Index of the smallest power of two not less than size
+		return 32 - Integer.numberOfLeadingZeros(size - 1) - minShift;
+	}
+	
+	@Override
+	public String toString() {
+		return "DirectBufferPool (sizes = " + (1 << minShift) + ".." + maxSize + ", free = " + getFreeBufferCount()
+				+ ")";
+	}
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+import org.lucidfox.jpromises.core.AsyncRunner;
+import org.lucidfox.jpromises.core.Combiner2;
+import org.lucidfox.jpromises.core.PromiseHandler;
+import org.lucidfox.jpromises.core.Resolver;
+import org.lucidfox.jpromises.core.ValueResolveCallback;
+
+/**
+ * <p>
+ * Processes a file in parallel, by memory-mapping it in chunks and handing each chunk to a {@link ChunkProcessor}
+ * running on an {@link AsyncRunner}.
+ * </p><p>
+ * Chunks are about {@code chunkSize} bytes long, but end right after a record delimiter (such as a line feed), so
+ * that no record is split between two chunks; the last chunk ends at the end of the file. If a record is longer
+ * than {@code chunkSize}, its chunk is extended until a delimiter is found. Chunks are mapped lazily, with at most
+ * {@code maxMappedChunks} being processed at any time, and the next chunk is mapped as soon as one completes.
+ * Mappings are released by the garbage collector once their chunk is processed, as with any
+ * {@link MappedByteBuffer}.
+ * </p><p>
+ * The results of the chunks are collected in file order. If a chunk fails, the returned promise is rejected with
+ * its exception and no further chunks are started.
+ * </p>
+ */
+@GwtIncompatible("java.nio.channels.FileChannel")
+public class MappedFileProcessor {
+	private final PromiseFactory factory;
+	private final AsyncRunner asyncRunner;
+	private final int chunkSize;
+	private final byte delimiter;
+	private final int maxMappedChunks;
+	
+	/**
+	 * Instantiates a new file processor.
+	 * 
+	 * @param factory the factory of the returned promises
+	 * @param asyncRunner the runner executing the chunk processors
+	 * @param chunkSize the approximate size of a chunk in bytes
+	 * @param delimiter the byte ending a record, after which chunks are split
+	 * @param maxMappedChunks the maximum number of chunks mapped and processed at the same time
+	 * @throws IllegalArgumentException if {@code chunkSize} or {@code maxMappedChunks} is not positive
+	 */
+	public MappedFileProcessor(final PromiseFactory factory, final AsyncRunner asyncRunner, final int chunkSize,
+			final byte delimiter, final int maxMappedChunks) {
+		if (factory == null) {
+			throw new NullPointerException("factory");
+		}
+		
+		if (asyncRunner == null) {
+			throw new NullPointerException("asyncRunner");
+		}
+		
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+		}
+		
+		if (maxMappedChunks <= 0) {
+			throw new IllegalArgumentException("Mapped chunk limit must be positive: " + maxMappedChunks);
+		}
+		
+		this.factory = factory;
+		this.asyncRunner = asyncRunner;
+		this.chunkSize = chunkSize;
+		this.delimiter = delimiter;
+		this.maxMappedChunks = maxMappedChunks;
+	}
+	
+	/**
+	 * Processes the file, collecting the results of its chunks.
+	 * 
+	 * @param <R> the type of the result of processing a chunk
+	 * @param path the file to process
+	 * @param processor the function processing each chunk
+	 * @return a promise resolved with the results of all chunks, in file order
+	 */
+	public <R> Promise<List<R>> process(final Path path, final ChunkProcessor<? extends R> processor) {
+		return factory.promise(new PromiseHandler<List<R>>() {
+			@Override
+			public void handle(final Resolver<List<R>> resolve) throws IOException {
+				final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+				
+				final Run<R> run;
+				
+				try {
+					run = new Run<>(channel, processor, resolve);
+				} catch (final IOException | RuntimeException e) {
+					Closeables.closeQuietly(channel);
+					throw e;
+				}
+				
+				run.startChunks();
+			}
+		});
+	}
+	
+	/**
+	 * Processes the file, folding the results of its chunks in file order.
+	 * 
+	 * @param <R> the type of the result of processing a chunk
+	 * @param <A> the type of the combined result
+	 * @param path the file to process
+	 * @param processor the function processing each chunk
+	 * @param identity the initial value of the fold
+	 * @param combiner the function combining the folded value with the result of the next chunk
+	 * @return a promise resolved with the combined result
+	 */
+	public <R, A> Promise<A> process(final Path path, final ChunkProcessor<? extends R> processor,
+			final A identity, final Combiner2<? super A, ? super R, ? extends A> combiner) {
+		return this.<R>process(path, processor).thenApply(new ValueResolveCallback<List<R>, A>() {
+			@Override
+			public A onResolve(final List<R> results) throws Exception {
+				A accumulated = identity;
+				
+				for (final R result: results) {
+					accumulated = combiner.combine(accumulated, result);
+				}
+				
+				return accumulated;
+			}
+		});
+	}
+	
+	/**
+	 * The state of a single {@code process} call.
+	 */
+	private final class Run<R> {
+		private final FileChannel channel;
+		private final ChunkProcessor<? extends R> processor;
+		private final Resolver<List<R>> resolver;
+		private final long size;
+		private final List<R> results = new ArrayList<>();
+		// Guarded by this
+		private long nextOffset;
+		private int running;
+		private boolean failed;
+		private boolean finished;
+		// Set while one thread is starting chunks; only that thread maps them, so it can do so outside the lock
+		private boolean draining;
+		private boolean moreWork;
+		
+		private Run(final FileChannel channel, final ChunkProcessor<? extends R> processor,
+				final Resolver<List<R>> resolver) throws IOException {
+			this.channel = channel;
+			this.processor = processor;
+			this.resolver = resolver;
+			this.size = channel.size();
+		}
+		
+		/**
+		 * Starts chunks up to the limit, then completes the run if nothing is left to do. If another call is already
+		 * starting chunks, for example further up the stack when the async runner runs chunks inline, this call only
+		 * tells it to look again, so that the stack depth does not grow with the number of chunks.
+		 */
+		private void startChunks() {
+			synchronized (this) {
+				if (draining) {
+					moreWork = true;
+					return;
+				}
+				
+				draining = true;
+			}
+			
+			try {
+				do {
+					while (startNext()) {
+						// Keep starting chunks up to the limit
+					}
+				} while (continueDraining());
+			} catch (final IOException | RuntimeException e) {
+				synchronized (this) {
+					draining = false;
+					moreWork = false;
+				}
+				
+				fail(e);
+			}
+			
+			finishIfDone();
+		}
+		
+		private synchronized boolean continueDraining() {
+			draining = moreWork;
+			moreWork = false;
+			return draining;
+		}
+		
+		/**
+		 * Maps the next chunk and submits it to the async runner. Only called by the thread starting chunks.
+		 * 
+		 * @return {@code false} if no more chunks can be started at this time
+		 */
+		private boolean startNext() throws IOException {
+			final int index;
+			final long offset;
+			final ByteBuffer chunk;
+			
+			synchronized (this) {
+				if (failed || nextOffset == size || running == maxMappedChunks) {
+					return false;
+				}
+				
+				offset = nextOffset;
+				running++;
+			}
+			
+			// Map and look for the delimiter without the lock, so that finishing chunks do not wait for page faults
+			try {
+				chunk = mapChunk(offset);
+			} catch (final IOException | RuntimeException e) {
+				synchronized (this) {
+					running--;
+				}
+				
+				throw e;
+			}
+			
+			synchronized (this) {
+				nextOffset = offset + chunk.remaining();
+				index = results.size();
+				results.add(null);
+			}
+			
+			try {
+				asyncRunner.runAsync(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							chunkDone(index, processor.process(chunk, offset), null);
+						} catch (final Exception e) {
+							chunkDone(index, null, e);
+						}
+					}
+				});
+			} catch (final RuntimeException e) {
+				synchronized (this) {
+					running--;
+				}
+				
+				throw e;
+			}
+			
+			return true;
+		}
+		
+		/**
+		 * Maps a chunk starting at {@code offset}, ending after the last delimiter in the window, extending the window
+		 * if it contains no delimiter.
+		 */
+		private ByteBuffer mapChunk(final long offset) throws IOException {
+			long window = chunkSize;
+			
+			while (true) {
+				final long length = Math.min(window, size - offset);
+				
+				if (length > Integer.MAX_VALUE) {
+					throw new IOException("No delimiter within " + Integer.MAX_VALUE + " bytes at offset " + offset);
+				}
+				
+				final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+				
+				if (offset + length == size) {
+					return mapped.asReadOnlyBuffer();
+				}
+				
+				for (int i = (int) length - 1; i >= 0; i--) {
+					if (mapped.get(i) == delimiter) {
+						mapped.limit(i + 1);
+						return mapped.slice().asReadOnlyBuffer();
+					}
+				}
+				
+				window *= 2;
+			}
+		}
+		
+		private void chunkDone(final int index, final R result, final Exception exception) {
+			synchronized (this) {
+				running--;
+				
+				if (exception == null) {
+					results.set(index, result);
+				}
+			}
+			
+			if (exception != null) {
+				fail(exception);
+			}
+			
+			startChunks();
+		}
+		
+		private void fail(final Exception exception) {
+			final boolean first;
+			
+			synchronized (this) {
+				first = !failed;
+				failed = true;
+			}
+			
+			// Reject right away; the channel is closed once the running chunks are done
+			if (first) {
+				resolver.reject(exception);
+			}
+		}
+		
+		private void finishIfDone() {
+			final boolean resolve;
+			
+			synchronized (this) {
+				if (finished || draining || running > 0 || !failed && nextOffset < size) {
+					return;
+				}
+				
+				finished = true;
+				resolve = !failed;
+			}
+			
+			Closeables.closeQuietly(channel);
+			
+			if (resolve) {
+				resolver.resolve(results);
+			}
+		}
+	}
+}
@@ -0,0 +1,413 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+import org.lucidfox.jpromises.core.PromiseHandler;
+import org.lucidfox.jpromises.core.Resolver;
+
+/**
+ * <p>
+ * Wraps an {@link AsynchronousFileChannel}, returning a {@link Promise} for each operation instead of taking
+ * a {@link CompletionHandler}.
+ * </p><p>
+ * Completions settle the promise directly in the channel's I/O thread, without an extra hop through an executor;
+ * only the {@code then} callbacks go through the factory's deferred invoker, as usual. Multi-step operations, such
+ * as {@link #readFully} and {@link #transferTo}, issue their follow-up reads and writes from the I/O thread as well,
+ * and settle the promise once at the end.
+ * </p><p>
+ * {@code readFully} and {@code transferTo} use buffers from a {@link DirectBufferPool}. The buffer returned by
+ * {@code readFully} belongs to the caller, who should return it with {@link #release} when done with it.
+ * </p>
+ */
+@GwtIncompatible("java.nio.channels.AsynchronousFileChannel")
+public class PromiseFileChannel implements Closeable {
+	/**
+	 * The maximum size of the buffer used by {@link #transferTo}, 64 KiB.
+	 */
+	public static final int TRANSFER_BUFFER_SIZE = 64 * 1024;
+	
+	private final PromiseFactory factory;
+	private final AsynchronousFileChannel channel;
+	private final DirectBufferPool bufferPool;
+	
+	/**
+	 * Wraps an open channel.
+	 * 
+	 * @param factory the factory of the returned promises
+	 * @param channel the channel to wrap
+	 * @param bufferPool the pool of buffers used by {@code readFully} and {@code transferTo}
+	 */
+	public PromiseFileChannel(final PromiseFactory factory, final AsynchronousFileChannel channel,
+			final DirectBufferPool bufferPool) {
+		if (factory == null) {
+			throw new NullPointerException("factory");
+		}
+		
+		if (channel == null) {
+			throw new NullPointerException("channel");
+		}
+		
+		if (bufferPool == null) {
+			throw new NullPointerException("bufferPool");
+		}
+		
+		this.factory = factory;
+		this.channel = channel;
+		this.bufferPool = bufferPool;
+	}
+	
+	/**
+	 * Opens a file, as with {@link AsynchronousFileChannel#open(Path, OpenOption...)}, and wraps the channel.
+	 * 
+	 * @param factory the factory of the returned promises
+	 * @param bufferPool the pool of buffers used by {@code readFully} and {@code transferTo}
+	 * @param path the path of the file to open
+	 * @param options the options specifying how the file is opened
+	 * @return the wrapped channel
+	 * @throws IOException if the file cannot be opened
+	 */
+	public static PromiseFileChannel open(final PromiseFactory factory, final DirectBufferPool bufferPool,
+			final Path path, final OpenOption... options) throws IOException {
+		return new PromiseFileChannel(factory, AsynchronousFileChannel.open(path, options), bufferPool);
+	}
+	
+	/**
+	 * @return the wrapped channel
+	 */
+	public final AsynchronousFileChannel getChannel() {
+		return channel;
+	}
+	
+	/**
+	 * @return the pool of buffers used by {@code readFully} and {@code transferTo}
+	 */
+	public final DirectBufferPool getBufferPool() {
+		return bufferPool;
+	}
+	
+	/**
+	 * Returns the current size of the file.
+	 * 
+	 * @return the size of the file in bytes
+	 * @throws IOException if an I/O error occurs
+	 */
+	public long size() throws IOException {
+		return channel.size();
+	}
+	
+	/**
+	 * Reads a sequence of bytes into the given buffer, as with {@link AsynchronousFileChannel#read}.
+	 * 
+	 * @param dst the buffer to read into
+	 * @param position the file position to start reading at
+	 * @return a promise resolved with the number of bytes read, or -1 if the position is at or beyond the end of
+	 * 			the file
+	 */
+	public Promise<Integer> read(final ByteBuffer dst, final long position) {
+		return factory.promise(new PromiseHandler<Integer>() {
+			@Override
+			public void handle(final Resolver<Integer> resolve) {
+				channel.read(dst, position, resolve, ResolvingHandler.<Integer>get());
+			}
+		});
+	}
+	
+	/**
+	 * Writes a sequence of bytes from the given buffer, as with {@link AsynchronousFileChannel#write}. Not all
+	 * remaining bytes are necessarily written; see {@link #writeFully}.
+	 * 
+	 * @param src the buffer to write from
+	 * @param position the file position to start writing at
+	 * @return a promise resolved with the number of bytes written
+	 */
+	public Promise<Integer> write(final ByteBuffer src, final long position) {
+		return factory.promise(new PromiseHandler<Integer>() {
+			@Override
+			public void handle(final Resolver<Integer> resolve) {
+				channel.write(src, position, resolve, ResolvingHandler.<Integer>get());
+			}
+		});
+	}
+	
+	/**
+	 * Writes all remaining bytes of the given buffer, issuing as many writes as needed.
+	 * 
+	 * @param src the buffer to write from
+	 * @param position the file position to start writing at
+	 * @return a promise resolved with the number of bytes written
+	 */
+	public Promise<Integer> writeFully(final ByteBuffer src, final long position) {
+		return factory.promise(new PromiseHandler<Integer>() {
+			@Override
+			public void handle(final Resolver<Integer> resolve) {
+				new WriteFully(resolve, src, position).next();
+			}
+		});
+	}
+	
+	/**
+	 * Reads {@code length} bytes starting at the given position into a pooled direct buffer, issuing as many reads
+	 * as needed. If the end of the file is reached first, the buffer contains fewer bytes. The buffer is flipped
+	 * for reading, and should be returned with {@link #release} when no longer needed.
+	 * 
+	 * @param position the file position to start reading at
+	 * @param length the number of bytes to read
+	 * @return a promise resolved with the buffer
+	 * @throws IllegalArgumentException if {@code length} is negative
+	 */
+	public Promise<ByteBuffer> readFully(final long position, final int length) {
+		final ByteBuffer buffer = bufferPool.acquire(length);
+		
+		return factory.promise(new PromiseHandler<ByteBuffer>() {
+			@Override
+			public void handle(final Resolver<ByteBuffer> resolve) {
+				new ReadFully(resolve, buffer, position).next();
+			}
+		});
+	}
+	
+	/**
+	 * Copies up to {@code count} bytes from this file to the target channel, through a pooled direct buffer of at most
+	 * {@value #TRANSFER_BUFFER_SIZE} bytes. The transfer stops early if the end of this file is reached.
+	 * 
+	 * @param position the position in this file to start reading at
+	 * @param count the maximum number of bytes to copy
+	 * @param target the channel to write to
+	 * @param targetPosition the position in the target file to start writing at
+	 * @return a promise resolved with the number of bytes copied
+	 * @throws IllegalArgumentException if {@code count} is negative
+	 */
+	public Promise<Long> transferTo(final long position, final long count, final PromiseFileChannel target,
+			final long targetPosition) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Negative count: " + count);
+		}
+		
+		final ByteBuffer buffer = bufferPool.acquire((int) Math.min(count, TRANSFER_BUFFER_SIZE));
+		
+		return factory.promise(new PromiseHandler<Long>() {
+			@Override
+			public void handle(final Resolver<Long> resolve) {
+				new Transfer(resolve, buffer, position, count, target.channel, targetPosition).read();
+			}
+		});
+	}
+	
+	/**
+	 * Returns a buffer obtained from {@link #readFully} to the buffer pool.
+	 * 
+	 * @param buffer the buffer to release
+	 */
+	public void release(final ByteBuffer buffer) {
+		bufferPool.release(buffer);
+	}
+	
+	/**
+	 * Closes the wrapped channel. Pending operations fail with
+	 * {@link java.nio.channels.AsynchronousCloseException}.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	@Override
+	public String toString() {
+		return "PromiseFileChannel (channel = " + channel + ")";
+	}
+	
+	private final class WriteFully implements CompletionHandler<Integer, Void> {
+		private final Resolver<Integer> resolver;
+		private final ByteBuffer buffer;
+		private long position;
+		private int written;
+		
+		private WriteFully(final Resolver<Integer> resolver, final ByteBuffer buffer, final long position) {
+			this.resolver = resolver;
+			this.buffer = buffer;
+			this.position = position;
+		}
+		
+		private void next() {
+			if (!buffer.hasRemaining()) {
+				resolver.resolve(written);
+				return;
+			}
+			
+			try {
+				channel.write(buffer, position, null, this);
+			} catch (final RuntimeException e) {
+				failed(e, null);
+			}
+		}
+		
+		@Override
+		public void completed(final Integer result, final Void attachment) {
+			position += result;
+			written += result;
+			next();
+		}
+		
+		@Override
+		public void failed(final Throwable exception, final Void attachment) {
+			resolver.reject(exception);
+		}
+	}
+	
+	private final class ReadFully implements CompletionHandler<Integer, Void> {
+		private final Resolver<ByteBuffer> resolver;
+		private final ByteBuffer buffer;
+		private long position;
+		
+		private ReadFully(final Resolver<ByteBuffer> resolver, final ByteBuffer buffer, final long position) {
+			this.resolver = resolver;
+			this.buffer = buffer;
+			this.position = position;
+		}
+		
+		private void next() {
+			if (!buffer.hasRemaining()) {
+				buffer.flip();
+				resolver.resolve(buffer);
+				return;
+			}
+			
+			try {
+				channel.read(buffer, position, null, this);
+			} catch (final RuntimeException e) {
+				failed(e, null);
+			}
+		}
+		
+		@Override
+		public void completed(final Integer result, final Void attachment) {
+			if (result < 0) {
+				buffer.flip();
+				resolver.resolve(buffer);
+				return;
+			}
+			
+			position += result;
+			next();
+		}
+		
+		@Override
+		public void failed(final Throwable exception, final Void attachment) {
+			bufferPool.release(buffer);
+			resolver.reject(exception);
+		}
+	}
+	
+	/**
+	 * Alternates between reading a chunk from this channel and writing it to the target.
+	 */
+	private final class Transfer implements CompletionHandler<Integer, Boolean> {
+		private final Resolver<Long> resolver;
+		private final ByteBuffer buffer;
+		private final long count;
+		private final AsynchronousFileChannel target;
+		private long position;
+		private long targetPosition;
+		private long transferred;
+		private long read;
+		
+		private Transfer(final Resolver<Long> resolver, final ByteBuffer buffer, final long position,
+				final long count, final AsynchronousFileChannel target, final long targetPosition) {
+			this.resolver = resolver;
+			this.buffer = buffer;
+			this.position = position;
+			this.count = count;
+			this.target = target;
+			this.targetPosition = targetPosition;
+		}
+		
+		private void read() {
+			if (read == count) {
+				finish();
+				return;
+			}
+			
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), count - read));
+			
+			try {
+				channel.read(buffer, position, Boolean.TRUE, this);
+			} catch (final RuntimeException e) {
+				failed(e, Boolean.TRUE);
+			}
+		}
+		
+		private void write() {
+			try {
+				target.write(buffer, targetPosition, Boolean.FALSE, this);
+			} catch (final RuntimeException e) {
+				failed(e, Boolean.FALSE);
+			}
+		}
+		
+		@Override
+		public void completed(final Integer result, final Boolean reading) {
+			if (reading) {
+				if (result < 0) {
+					finish();
+					return;
+				}
+				
+				position += result;
+				read += result;
+				buffer.flip();
+				write();
+			} else {
+				targetPosition += result;
+				transferred += result;
+				
+				if (buffer.hasRemaining()) {
+					write();
+				} else {
+					read();
+				}
+			}
+		}
+		
+		@Override
+		public void failed(final Throwable exception, final Boolean reading) {
+			bufferPool.release(buffer);
+			resolver.reject(exception);
+		}
+		
+		private void finish() {
+			bufferPool.release(buffer);
+			resolver.resolve(transferred);
+		}
+	}
+}
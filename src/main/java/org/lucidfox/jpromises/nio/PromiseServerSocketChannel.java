@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousServerSocketChannel;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+import org.lucidfox.jpromises.core.PromiseHandler;
+import org.lucidfox.jpromises.core.Resolver;
+
+/**
+ * Wraps an {@link AsynchronousServerSocketChannel}, returning accepted connections as promises of
+ * {@link PromiseSocketChannel}s.
+ */
+@GwtIncompatible("java.nio.channels.AsynchronousServerSocketChannel")
+public class PromiseServerSocketChannel implements Closeable {
+	private final PromiseFactory factory;
+	private final AsynchronousServerSocketChannel channel;
+	private final DirectBufferPool bufferPool;
+	
+	/**
+	 * Wraps a bound server channel.
+	 * 
+	 * @param factory the factory of the returned promises
+	 * @param channel the channel to wrap
+	 * @param bufferPool the pool of buffers used by the accepted channels
+	 */
+	public PromiseServerSocketChannel(final PromiseFactory factory, final AsynchronousServerSocketChannel channel,
+			final DirectBufferPool bufferPool) {
+		if (factory == null) {
+			throw new NullPointerException("factory");
+		}
+		
+		if (channel == null) {
+			throw new NullPointerException("channel");
+		}
+		
+		if (bufferPool == null) {
+			throw new NullPointerException("bufferPool");
+		}
+		
+		this.factory = factory;
+		this.channel = channel;
+		this.bufferPool = bufferPool;
+	}
+	
+	/**
+	 * Opens a server socket channel in the given group and binds it to a local address.
+	 * 
+	 * @param factory the factory of the returned promises
+	 * @param bufferPool the pool of buffers used by the accepted channels
+	 * @param group the channel group, or {@code null} for the default group
+	 * @param local the address to bind to, or {@code null} for an automatically assigned address
+	 * @return the bound channel
+	 * @throws IOException if the channel cannot be opened or bound
+	 */
+	public static PromiseServerSocketChannel open(final PromiseFactory factory, final DirectBufferPool bufferPool,
+			final AsynchronousChannelGroup group, final SocketAddress local) throws IOException {
+		final AsynchronousServerSocketChannel channel = AsynchronousServerSocketChannel.open(group);
+		
+		try {
+			channel.bind(local);
+		} catch (final IOException | RuntimeException e) {
+			Closeables.closeQuietly(channel);
+			throw e;
+		}
+		
+		return new PromiseServerSocketChannel(factory, channel, bufferPool);
+	}
+	
+	/**
+	 * @return the wrapped channel
+	 */
+	public final AsynchronousServerSocketChannel getChannel() {
+		return channel;
+	}
+	
+	/**
+	 * Returns the address the channel is bound to.
+	 * 
+	 * @return the local address
+	 * @throws IOException if an I/O error occurs
+	 */
+	public SocketAddress getLocalAddress() throws IOException {
+		return channel.getLocalAddress();
+	}
+	
+	/**
+	 * Accepts a connection. Only one accept may be pending at a time, as with the wrapped channel.
+	 * 
+	 * @return a promise resolved with the accepted connection
+	 */
+	public Promise<PromiseSocketChannel> accept() {
+		return factory.promise(new PromiseHandler<PromiseSocketChannel>() {
+			@Override
+			public void handle(final Resolver<PromiseSocketChannel> resolve) {
+				channel.accept(resolve, new CompletionHandler<AsynchronousSocketChannel,
+						Resolver<PromiseSocketChannel>>() {
+					@Override
+					public void completed(final AsynchronousSocketChannel result,
+							final Resolver<PromiseSocketChannel> resolver) {
+						resolver.resolve(new PromiseSocketChannel(factory, result, bufferPool));
+					}
+					
+					@Override
+					public void failed(final Throwable exception, final Resolver<PromiseSocketChannel> resolver) {
+						resolver.reject(exception);
+					}
+				});
+			}
+		});
+	}
+	
+	/**
+	 * Closes the wrapped channel. A pending accept fails with {@link java.nio.channels.AsynchronousCloseException}.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	@Override
+	public String toString() {
+		return "PromiseServerSocketChannel (channel = " + channel + ")";
+	}
+}
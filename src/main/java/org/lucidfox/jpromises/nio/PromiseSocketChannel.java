@@ -0,0 +1,360 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.nio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+import org.lucidfox.jpromises.core.PromiseHandler;
+import org.lucidfox.jpromises.core.Resolver;
+
+/**
+ * <p>
+ * Wraps a connected {@link AsynchronousSocketChannel}, returning a {@link Promise} for each operation instead of
+ * taking a {@link CompletionHandler}. As with {@link PromiseFileChannel}, completions settle the promise directly in
+ * the channel group's I/O thread.
+ * </p><p>
+ * Unlike the wrapped channel, which fails with {@link java.nio.channels.WritePendingException} if a write is started
+ * before the previous one completes, this class accepts writes at any time, from any thread. They are queued by
+ * a lock-free sequencer and written one after another, in the order the write methods were called, so the bytes
+ * of a {@link #writeAll} call are never interleaved with those of another. Reads are not sequenced: only one read
+ * may be pending at a time, as with the wrapped channel.
+ * </p>
+ */
+@GwtIncompatible("java.nio.channels.AsynchronousSocketChannel")
+public class PromiseSocketChannel implements Closeable {
+	private final PromiseFactory factory;
+	private final AsynchronousSocketChannel channel;
+	private final DirectBufferPool bufferPool;
+	
+	// Writes waiting for their turn, and the number of writes queued or in progress
+	private final ConcurrentLinkedQueue<Write> writeQueue = new ConcurrentLinkedQueue<>();
+	private final AtomicInteger pendingWrites = new AtomicInteger();
+	
+	/**
+	 * Wraps a connected channel.
+	 * 
+	 * @param factory the factory of the returned promises
+	 * @param channel the channel to wrap
+	 * @param bufferPool the pool of buffers used by {@code readFully}
+	 */
+	public PromiseSocketChannel(final PromiseFactory factory, final AsynchronousSocketChannel channel,
+			final DirectBufferPool bufferPool) {
+		if (factory == null) {
+			throw new NullPointerException("factory");
+		}
+		
+		if (channel == null) {
+			throw new NullPointerException("channel");
+		}
+		
+		if (bufferPool == null) {
+			throw new NullPointerException("bufferPool");
+		}
+		
+		this.factory = factory;
+		this.channel = channel;
+		this.bufferPool = bufferPool;
+	}
+	
+	/**
+	 * Opens a socket channel in the given group and connects it to a remote address.
+	 * 
+	 * @param factory the factory of the returned promises
+	 * @param bufferPool the pool of buffers used by {@code readFully}
+	 * @param group the channel group, or {@code null} for the default group
+	 * @param remote the address to connect to
+	 * @return a promise resolved with the connected channel
+	 */
+	public static Promise<PromiseSocketChannel> connect(final PromiseFactory factory,
+			final DirectBufferPool bufferPool, final AsynchronousChannelGroup group, final SocketAddress remote) {
+		return factory.promise(new PromiseHandler<PromiseSocketChannel>() {
+			@Override
+			public void handle(final Resolver<PromiseSocketChannel> resolve) throws IOException {
+				final AsynchronousSocketChannel channel = AsynchronousSocketChannel.open(group);
+				
+				final CompletionHandler<Void, Void> handler = new CompletionHandler<Void, Void>() {
+					@Override
+					public void completed(final Void result, final Void attachment) {
+						resolve.resolve(new PromiseSocketChannel(factory, channel, bufferPool));
+					}
+					
+					@Override
+					public void failed(final Throwable exception, final Void attachment) {
+						Closeables.closeQuietly(channel);
+						resolve.reject(exception);
+					}
+				};
+				
+				try {
+					channel.connect(remote, null, handler);
+				} catch (final RuntimeException e) {
+					handler.failed(e, null);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * @return the wrapped channel
+	 */
+	public final AsynchronousSocketChannel getChannel() {
+		return channel;
+	}
+	
+	/**
+	 * @return the pool of buffers used by {@code readFully}
+	 */
+	public final DirectBufferPool getBufferPool() {
+		return bufferPool;
+	}
+	
+	/**
+	 * Returns the address of the remote peer.
+	 * 
+	 * @return the remote address
+	 * @throws IOException if an I/O error occurs
+	 */
+	public SocketAddress getRemoteAddress() throws IOException {
+		return channel.getRemoteAddress();
+	}
+	
+	/**
+	 * Reads a sequence of bytes into the given buffer, as with {@link AsynchronousSocketChannel#read}.
+	 * 
+	 * @param dst the buffer to read into
+	 * @return a promise resolved with the number of bytes read, or -1 if the peer has shut down its output
+	 */
+	public Promise<Integer> read(final ByteBuffer dst) {
+		return factory.promise(new PromiseHandler<Integer>() {
+			@Override
+			public void handle(final Resolver<Integer> resolve) {
+				channel.read(dst, resolve, ResolvingHandler.<Integer>get());
+			}
+		});
+	}
+	
+	/**
+	 * Reads a sequence of bytes into the given buffers, filling them in order (a scattering read).
+	 * 
+	 * @param dsts the buffers to read into
+	 * @return a promise resolved with the number of bytes read, or -1 if the peer has shut down its output
+	 */
+	public Promise<Long> read(final ByteBuffer... dsts) {
+		return factory.promise(new PromiseHandler<Long>() {
+			@Override
+			public void handle(final Resolver<Long> resolve) {
+				channel.read(dsts, 0, dsts.length, 0, TimeUnit.MILLISECONDS, resolve, ResolvingHandler.<Long>get());
+			}
+		});
+	}
+	
+	/**
+	 * Reads {@code length} bytes into a pooled direct buffer, issuing as many reads as needed. If the peer shuts down
+	 * its output first, the buffer contains fewer bytes. The buffer is flipped for reading, and should be returned
+	 * with {@link #release} when no longer needed.
+	 * 
+	 * @param length the number of bytes to read
+	 * @return a promise resolved with the buffer
+	 * @throws IllegalArgumentException if {@code length} is negative
+	 */
+	public Promise<ByteBuffer> readFully(final int length) {
+		final ByteBuffer buffer = bufferPool.acquire(length);
+		
+		return factory.promise(new PromiseHandler<ByteBuffer>() {
+			@Override
+			public void handle(final Resolver<ByteBuffer> resolve) {
+				new ReadFully(resolve, buffer).next();
+			}
+		});
+	}
+	
+	/**
+	 * Writes a sequence of bytes from the given buffers, in order (a gathering write), once all previously started
+	 * writes are complete. Not all remaining bytes are necessarily written; see {@link #writeAll}.
+	 * 
+	 * @param srcs the buffers to write from
+	 * @return a promise resolved with the number of bytes written
+	 */
+	public Promise<Long> write(final ByteBuffer... srcs) {
+		return enqueueWrite(srcs, false);
+	}
+	
+	/**
+	 * Writes all remaining bytes of the given buffers, in order, once all previously started writes are complete.
+	 * No other write of this channel starts before this one is complete.
+	 * 
+	 * @param srcs the buffers to write from
+	 * @return a promise resolved with the number of bytes written
+	 */
+	public Promise<Long> writeAll(final ByteBuffer... srcs) {
+		return enqueueWrite(srcs, true);
+	}
+	
+	private Promise<Long> enqueueWrite(final ByteBuffer[] srcs, final boolean all) {
+		return factory.promise(new PromiseHandler<Long>() {
+			@Override
+			public void handle(final Resolver<Long> resolve) {
+				writeQueue.offer(new Write(resolve, srcs, all));
+				
+				// Whoever brings the count up from zero starts the write; the others are started on completion
+				if (pendingWrites.getAndIncrement() == 0) {
+					writeQueue.poll().next();
+				}
+			}
+		});
+	}
+	
+	private void writeFinished() {
+		if (pendingWrites.decrementAndGet() > 0) {
+			writeQueue.poll().next();
+		}
+	}
+	
+	/**
+	 * Returns a buffer obtained from {@link #readFully} to the buffer pool.
+	 * 
+	 * @param buffer the buffer to release
+	 */
+	public void release(final ByteBuffer buffer) {
+		bufferPool.release(buffer);
+	}
+	
+	/**
+	 * Closes the wrapped channel. Pending operations fail with
+	 * {@link java.nio.channels.AsynchronousCloseException}.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	@Override
+	public String toString() {
+		return "PromiseSocketChannel (channel = " + channel + ")";
+	}
+	
+	/**
+	 * A queued write, which hands the channel over to the next one when complete.
+	 */
+	private final class Write implements CompletionHandler<Long, Void> {
+		private final Resolver<Long> resolver;
+		private final ByteBuffer[] srcs;
+		private final boolean all;
+		private long written;
+		// The first buffer with bytes remaining, so that completed buffers are not passed again
+		private int offset;
+		
+		private Write(final Resolver<Long> resolver, final ByteBuffer[] srcs, final boolean all) {
+			this.resolver = resolver;
+			this.srcs = srcs;
+			this.all = all;
+		}
+		
+		private void next() {
+			while (offset < srcs.length && !srcs[offset].hasRemaining()) {
+				offset++;
+			}
+			
+			if (offset == srcs.length) {
+				writeFinished();
+				resolver.resolve(written);
+				return;
+			}
+			
+			try {
+				channel.write(srcs, offset, srcs.length - offset, 0, TimeUnit.MILLISECONDS, null, this);
+			} catch (final RuntimeException e) {
+				failed(e, null);
+			}
+		}
+		
+		@Override
+		public void completed(final Long result, final Void attachment) {
+			written += result;
+			
+			if (all) {
+				next();
+			} else {
+				writeFinished();
+				resolver.resolve(written);
+			}
+		}
+		
+		@Override
+		public void failed(final Throwable exception, final Void attachment) {
+			writeFinished();
+			resolver.reject(exception);
+		}
+	}
+	
+	private final class ReadFully implements CompletionHandler<Integer, Void> {
+		private final Resolver<ByteBuffer> resolver;
+		private final ByteBuffer buffer;
+		
+		private ReadFully(final Resolver<ByteBuffer> resolver, final ByteBuffer buffer) {
+			this.resolver = resolver;
+			this.buffer = buffer;
+		}
+		
+		private void next() {
+			if (!buffer.hasRemaining()) {
+				buffer.flip();
+				resolver.resolve(buffer);
+				return;
+			}
+			
+			try {
+				channel.read(buffer, null, this);
+			} catch (final RuntimeException e) {
+				failed(e, null);
+			}
+		}
+		
+		@Override
+		public void completed(final Integer result, final Void attachment) {
+			if (result < 0) {
+				buffer.flip();
+				resolver.resolve(buffer);
+			} else {
+				next();
+			}
+		}
+		
+		@Override
+		public void failed(final Throwable exception, final Void attachment) {
+			bufferPool.release(buffer);
+			resolver.reject(exception);
+		}
+	}
+}
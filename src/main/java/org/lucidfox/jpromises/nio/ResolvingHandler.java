@@ -0,0 +1,54 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.nio;
+
+import java.nio.channels.CompletionHandler;
+
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+import org.lucidfox.jpromises.core.Resolver;
+
+/**
+ * A stateless completion handler that settles the resolver passed as the attachment, so that single-step operations
+ * do not allocate a handler per call.
+ */
+@GwtIncompatible("java.nio.channels.CompletionHandler")
+/* package */ final class ResolvingHandler<V> implements CompletionHandler<V, Resolver<V>> {
+	private static final ResolvingHandler<?> INSTANCE = new ResolvingHandler<>();
+	
+	private ResolvingHandler() {
+	}
+	
+	@SuppressWarnings("unchecked")
+	/* package */ static <V> CompletionHandler<V, Resolver<V>> get() {
+		return (CompletionHandler<V, Resolver<V>>) INSTANCE;
+	}
+	
+	@Override
+	public void completed(final V result, final Resolver<V> resolver) {
+		resolver.resolve(result);
+	}
+	
+	@Override
+	public void failed(final Throwable exception, final Resolver<V> resolver) {
+		resolver.reject(exception);
+	}
+}
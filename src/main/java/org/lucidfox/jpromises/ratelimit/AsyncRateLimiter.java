@@ -0,0 +1,318 @@
+/*
+ * Copyright 2017 Maia Everett <maia@everett.one>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package org.lucidfox.jpromises.ratelimit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.annotation.GwtIncompatible;
+import org.lucidfox.jpromises.core.PromiseHandler;
+import org.lucidfox.jpromises.core.Resolver;
+
+/**
+ * <p>
+ * A token bucket rate limiter whose permits are promises, so that callers wait for them without blocking a thread.
+ * </p><p>
+ * The bucket holds up to a fixed number of tokens, and starts full. Every refill period, a fixed number of tokens is
+ * added back, up to the capacity. {@link #acquire(int)} takes tokens from the bucket and returns a resolved promise
+ * if enough are available and nobody is waiting; otherwise it returns a pending promise that is queued behind the
+ * earlier waiters. Waiters are released in order whenever tokens are refilled, as many at once as the refill
+ * allows.
+ * </p><p>
+ * The token count is a lock-free counter, and refills are credited lazily from {@link System#nanoTime()} whenever the
+ * limiter is used. A timer task is only scheduled on the given {@link ScheduledExecutorService} while there are
+ * waiters, at the time of the next refill, so an idle limiter costs nothing. The executor can be shared by any number
+ * of limiters; by default, a single daemon thread is shared by all limiters that are not given one.
+ * </p><p>
+ * Promises are resolved through the limiter's {@link PromiseFactory}, from the thread calling {@link #acquire(int)}
+ * or from the timer thread.
+ * </p>
+ */
+@GwtIncompatible("java.util.concurrent")
+public class AsyncRateLimiter {
+	private final PromiseFactory factory;
+	private final ScheduledExecutorService timer;
+	private final long capacity;
+	private final long refillTokens;
+	private final long refillNanos;
+	
+	private final AtomicLong tokens;
+	private final AtomicLong nextRefill;
+	private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+	// Serializes the draining of waiters, so that they are released in order
+	private final AtomicInteger drainCount = new AtomicInteger();
+	private final AtomicBoolean timerScheduled = new AtomicBoolean();
+	
+	private final Runnable timerTask = new Runnable() {
+		@Override
+		public void run() {
+			timerScheduled.set(false);
+			drain();
+			scheduleTimerIfWaiting();
+		}
+	};
+	
+	/**
+	 * Instantiates a new rate limiter handing out up to the given number of permits per second, with bursts of up to
+	 * that many permits, using the shared default timer.
+	 * 
+	 * @param factory the promise factory used to create permit promises
+	 * @param permitsPerSecond the number of permits per second
+	 * @throws IllegalArgumentException if {@code permitsPerSecond} is not positive
+	 */
+	public AsyncRateLimiter(final PromiseFactory factory, final long permitsPerSecond) {
+		this(factory, DefaultTimer.INSTANCE, permitsPerSecond, permitsPerSecond, 1, TimeUnit.SECONDS);
+	}
+	
+	/**
+	 * Instantiates a new rate limiter.
+	 * 
+	 * @param factory the promise factory used to create permit promises
+	 * @param timer the executor used to release waiters when tokens are refilled
+	 * @param capacity the maximum number of tokens in the bucket, which is also the initial number
+	 * @param refillTokens the number of tokens added every refill period
+	 * @param refillPeriod the refill period
+	 * @param unit the time unit of {@code refillPeriod}
+	 * @throws IllegalArgumentException if any of the numbers is not positive
+	 */
+	public AsyncRateLimiter(final PromiseFactory factory, final ScheduledExecutorService timer, final long capacity,
+			final long refillTokens, final long refillPeriod, final TimeUnit unit) {
+		if (factory == null) {
+			throw new NullPointerException("factory");
+		}
+		
+		if (timer == null) {
+			throw new NullPointerException("timer");
+		}
+		
+		if (unit == null) {
+			throw new NullPointerException("unit");
+		}
+		
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity is not positive: " + capacity);
+		}
+		
+		if (refillTokens <= 0) {
+			throw new IllegalArgumentException("Refill token count is not positive: " + refillTokens);
+		}
+		
+		if (refillPeriod <= 0) {
+			throw new IllegalArgumentException("Refill period is not positive: " + refillPeriod);
+		}
+		
+		this.factory = factory;
+		this.timer = timer;
+		this.capacity = capacity;
+		this.refillTokens = refillTokens;
+		this.refillNanos = unit.toNanos(refillPeriod);
+		this.tokens = new AtomicLong(capacity);
+		this.nextRefill = new AtomicLong(System.nanoTime() + refillNanos);
+	}
+	
+	/**
+	 * Acquires a single permit.
+	 * 
+	 * @return the promise resolved when the permit is granted
+	 */
+	public Promise<Void> acquire() {
+		return acquire(1);
+	}
+	
+	/**
+	 * Acquires the given number of permits. The returned promise is resolved once they are all granted; waiters are
+	 * served in the order they called this method, so a large request is not overtaken by later small ones.
+	 * 
+	 * @param permits the number of permits
+	 * @return the promise resolved when the permits are granted
+	 * @throws IllegalArgumentException if {@code permits} is not positive or exceeds the capacity of the bucket
+	 */
+	public Promise<Void> acquire(final int permits) {
+		checkPermits(permits);
+		
+		if (waiters.isEmpty() && take(permits)) {
+			return factory.resolve(null);
+		}
+		
+		return factory.promise(new PromiseHandler<Void>() {
+			@Override
+			public void handle(final Resolver<Void> resolve) {
+				waiters.add(new Waiter(permits, resolve));
+				drain();
+				scheduleTimerIfWaiting();
+			}
+		});
+	}
+	
+	/**
+	 * Acquires the given number of permits if they are available immediately and nobody is waiting for permits.
+	 * 
+	 * @param permits the number of permits
+	 * @return {@code true} if the permits were acquired
+	 * @throws IllegalArgumentException if {@code permits} is not positive or exceeds the capacity of the bucket
+	 */
+	public boolean tryAcquire(final int permits) {
+		checkPermits(permits);
+		return waiters.isEmpty() && take(permits);
+	}
+	
+	/**
+	 * Returns the number of tokens currently in the bucket.
+	 * 
+	 * @return the number of available permits
+	 */
+	public long getAvailablePermits() {
+		refill();
+		return tokens.get();
+	}
+	
+	private void checkPermits(final int permits) {
+		if (permits <= 0 || permits > capacity) {
+			throw new IllegalArgumentException("Permit count out of range [1, " + capacity + "]: " + permits);
+		}
+	}
+	
+	/**
+	 * Credits the tokens for the refill periods that have elapsed. Each period is credited by exactly one thread,
+	 * the one that advances {@link #nextRefill} past it.
+	 */
+	private void refill() {
+		final long now = System.nanoTime();
+		
+		while (true) {
+			final long next = nextRefill.get();
+			
+			if (now - next < 0) {
+				return;
+			}
+			
+			final long periods = (now - next) / refillNanos + 1;
+			
+			if (nextRefill.compareAndSet(next, next + periods * refillNanos)) {
+				final long added = periods > capacity / refillTokens ? capacity : periods * refillTokens;
+				
+				while (true) {
+					final long current = tokens.get();
+					
+					if (tokens.compareAndSet(current, Math.min(capacity, current + added))) {
+						return;
+					}
+				}
+			}
+		}
+	}
+	
+	private boolean take(final int permits) {
+		refill();
+		
+		while (true) {
+			final long current = tokens.get();
+			
+			if (current < permits) {
+				return false;
+			}
+			
+			if (tokens.compareAndSet(current, current - permits)) {
+				return true;
+			}
+		}
+	}
+	
+	/**
+	 * Releases the waiters at the head of the queue for which there are enough tokens. Only one thread drains at a
+	 * time; a thread calling this while another is draining makes it take another pass instead.
+	 */
+	private void drain() {
+		if (drainCount.getAndIncrement() != 0) {
+			return;
+		}
+		
+		final List<Waiter> released = new ArrayList<>();
+		int missed = 1;
+		
+		do {
+			Waiter waiter;
+			
+			while ((waiter = waiters.peek()) != null && take(waiter.permits)) {
+				waiters.poll();
+				released.add(waiter);
+			}
+			
+			missed = drainCount.addAndGet(-missed);
+		} while (missed != 0);
+		
+		// Resolve outside the drain loop, since callbacks may acquire more permits
+		for (final Waiter releasedWaiter: released) {
+			releasedWaiter.resolver.resolve(null);
+		}
+	}
+	
+	private void scheduleTimerIfWaiting() {
+		if (!waiters.isEmpty() && timerScheduled.compareAndSet(false, true)) {
+			final long delay = Math.max(0, nextRefill.get() - System.nanoTime());
+			timer.schedule(timerTask, delay, TimeUnit.NANOSECONDS);
+		}
+	}
+	
+	private static final class Waiter {
+		private final int permits;
+		private final Resolver<Void> resolver;
+		
+		private Waiter(final int permits, final Resolver<Void> resolver) {
+			this.permits = permits;
+			this.resolver = resolver;
+		}
+	}
+	
+	/**
+	 * Holds the timer shared by limiters created without one, so that its thread is only started when needed.
+	 */
+	private static final class DefaultTimer {
+		private static final ScheduledExecutorService INSTANCE = createTimer();
+		
+		private DefaultTimer() { }
+		
+		private static ScheduledExecutorService createTimer() {
+			final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				@Override
+				public Thread newThread(final Runnable runnable) {
+					final Thread thread = new Thread(runnable, "jpromises-rate-limiter");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			
+			executor.setRemoveOnCancelPolicy(true);
+			return executor;
+		}
+	}
+}
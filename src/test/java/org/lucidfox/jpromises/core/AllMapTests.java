@@ -0,0 +1,140 @@
+package org.lucidfox.jpromises.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.helpers.Capture;
+import org.lucidfox.jpromises.core.helpers.DeferredPromiseHandler;
+import org.lucidfox.jpromises.core.helpers.TaskQueue;
+
+public class AllMapTests {
+	private final TaskQueue tasks = new TaskQueue();
+	private final PromiseFactory factory = new PromiseFactory(tasks);
+	
+	@Test
+	public void testAllMap() {
+		final Map<String, Promise<Integer>> thenables = new LinkedHashMap<>();
+		final Map<String, Integer> expected = new HashMap<>();
+		final DeferredPromiseHandler<Integer> last = new DeferredPromiseHandler<>();
+		
+		for (int i = 0; i < 100; i++) {
+			thenables.put("key" + i, factory.resolve(i));
+			expected.put("key" + i, i);
+		}
+		
+		thenables.put(null, factory.promise(last));
+		expected.put(null, -1);
+		
+		final Capture<?> captured = Capture.of(factory.allMap(thenables));
+		tasks.runPendingTasks();
+		assertNull(captured.getValue());
+		
+		last.resolve(-1);
+		tasks.runPendingTasks();
+		
+		@SuppressWarnings("unchecked")
+		final Map<String, Integer> map = (Map<String, Integer>) captured.getValue();
+		assertEquals(expected, map);
+		assertEquals(map, expected);
+		assertEquals(expected.hashCode(), map.hashCode());
+		assertEquals(Integer.valueOf(42), map.get("key42"));
+		assertEquals(Integer.valueOf(-1), map.get(null));
+		assertNull(map.get("missing"));
+		assertFalse(map.containsKey("missing"));
+		assertEquals(new ArrayList<>(thenables.keySet()), new ArrayList<>(map.keySet()));
+		
+		try {
+			map.put("foo", 1);
+			fail();
+		} catch (final UnsupportedOperationException e) {
+			// Expected
+		}
+	}
+	
+	@Test
+	public void testEmpty() {
+		final Capture<?> captured = Capture.of(factory.allMap(new HashMap<String, Promise<String>>()));
+		tasks.runPendingTasks();
+		assertEquals(new HashMap<String, String>(), captured.getValue());
+	}
+	
+	@Test
+	public void testRejection() {
+		final Exception exception = new Exception();
+		final Map<String, Promise<String>> thenables = new HashMap<>();
+		thenables.put("a", factory.resolve("foo"));
+		thenables.put("b", factory.<String>reject(exception));
+		
+		final Capture<?> captured = Capture.of(factory.allMap(thenables));
+		tasks.runPendingTasks();
+		assertNull(captured.getValue());
+		assertSame(exception, captured.getException());
+	}
+	
+	@Test
+	public void testTargetMapKeepsPartialResults() {
+		final Exception exception = new Exception();
+		final DeferredPromiseHandler<String> first = new DeferredPromiseHandler<>();
+		final DeferredPromiseHandler<String> second = new DeferredPromiseHandler<>();
+		final DeferredPromiseHandler<String> third = new DeferredPromiseHandler<>();
+		final Map<Integer, Promise<String>> thenables = new HashMap<>();
+		thenables.put(1, factory.promise(first));
+		thenables.put(2, factory.promise(second));
+		thenables.put(3, factory.promise(third));
+		final TreeMap<Integer, String> target = new TreeMap<>();
+		
+		final Capture<?> captured = Capture.of(factory.allMap(thenables, target));
+		first.resolve("one");
+		tasks.runPendingTasks();
+		second.reject(exception);
+		tasks.runPendingTasks();
+		third.resolve("three");
+		tasks.runPendingTasks();
+		
+		assertSame(exception, captured.getException());
+		assertEquals(Arrays.asList(1), new ArrayList<>(target.keySet()));
+	}
+	
+	@Test
+	public void testTargetMap() {
+		final Map<Integer, Promise<String>> thenables = new HashMap<>();
+		thenables.put(2, factory.resolve("two"));
+		thenables.put(1, factory.resolve("one"));
+		final TreeMap<Integer, String> target = new TreeMap<>();
+		
+		final Capture<?> captured = Capture.of(factory.allMap(thenables, target));
+		tasks.runPendingTasks();
+		assertSame(target, captured.getValue());
+		assertEquals(Arrays.asList("one", "two"), new ArrayList<>(target.values()));
+	}
+	
+	@Test
+	public void testAllMapSettled() {
+		final Exception exception = new Exception();
+		final Map<String, Promise<String>> thenables = new LinkedHashMap<>();
+		thenables.put("a", factory.resolve("foo"));
+		thenables.put("b", factory.<String>reject(exception));
+		thenables.put("c", factory.resolve("bar"));
+		final Map<String, Throwable> failures = new HashMap<>();
+		
+		final Capture<?> captured = Capture.of(factory.allMapSettled(thenables, failures));
+		tasks.runPendingTasks();
+		assertNull(captured.getException());
+		
+		final Map<String, String> expected = new LinkedHashMap<>();
+		expected.put("a", "foo");
+		expected.put("c", "bar");
+		assertEquals(expected, captured.getValue());
+		assertEquals(1, failures.size());
+		assertSame(exception, failures.get("b"));
+	}
+}
@@ -0,0 +1,68 @@
+package org.lucidfox.jpromises.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.helpers.TaskQueue;
+
+public class AsyncStackTraceTests {
+	private final TaskQueue tasks = new TaskQueue();
+	private final PromiseFactory factory = new PromiseFactory(tasks);
+	private Throwable caught;
+	
+	private void chainThrowingCallback() {
+		factory.resolve("value").thenApply(new ValueResolveCallback<String, String>() {
+			@Override
+			public String onResolve(final String value) {
+				throw new IllegalStateException();
+			}
+		}).onExceptionAccept(new VoidRejectCallback() {
+			@Override
+			public void onReject(final Throwable exception) {
+				caught = exception;
+			}
+		});
+		
+		tasks.runPendingTasks();
+	}
+	
+	@Test
+	public void testCallSiteAttached() {
+		factory.setAsyncStackTraceSampling(1);
+		chainThrowingCallback();
+		
+		assertTrue(caught instanceof IllegalStateException);
+		assertEquals(1, caught.getSuppressed().length);
+		
+		final Throwable callSite = caught.getSuppressed()[0];
+		assertTrue(callSite instanceof AsyncCallSiteException);
+		
+		boolean found = false;
+		
+		for (final StackTraceElement element: callSite.getStackTrace()) {
+			if (element.getMethodName().equals("chainThrowingCallback")) {
+				found = true;
+			}
+		}
+		
+		assertTrue(found);
+	}
+	
+	@Test
+	public void testDisabledByDefault() {
+		chainThrowingCallback();
+		
+		assertTrue(caught instanceof IllegalStateException);
+		assertEquals(0, caught.getSuppressed().length);
+	}
+	
+	@Test
+	public void testSampling() {
+		factory.setAsyncStackTraceSampling(1000);
+		chainThrowingCallback();
+		
+		assertTrue(caught instanceof IllegalStateException);
+		assertEquals(0, caught.getSuppressed().length);
+	}
+}
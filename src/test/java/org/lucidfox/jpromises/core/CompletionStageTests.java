@@ -0,0 +1,130 @@
+package org.lucidfox.jpromises.core;
+
+import static org.junit.Assert.*;
+import static org.lucidfox.jpromises.CompletableFutures.fromCompletionStage;
+import static org.lucidfox.jpromises.CompletableFutures.toCompletableFuture;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.helpers.DeferredPromiseHandler;
+
+public class CompletionStageTests {
+	private ExecutorService executor;
+	private PromiseFactory factory;
+	
+	@Before
+	public void setUp() {
+		executor = Executors.newSingleThreadExecutor();
+		factory = new PromiseFactory(new DeferredInvoker() {
+			@Override
+			public void invokeDeferred(final Runnable task) {
+				try {
+					executor.execute(task);
+				} catch (final RejectedExecutionException e) {
+					// Test already finished
+				}
+			}
+		});
+	}
+	
+	@After
+	public void tearDown() {
+		executor.shutdownNow();
+	}
+	
+	@Test
+	public void testToCompletableFutureResolved() throws Exception {
+		assertEquals("value", toCompletableFuture(factory.resolve("value")).get(5, TimeUnit.SECONDS));
+	}
+	
+	@Test
+	public void testToCompletableFutureRejected() throws Exception {
+		final Exception exception = new Exception();
+		
+		try {
+			toCompletableFuture(factory.reject(exception)).get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (final ExecutionException e) {
+			assertSame(exception, e.getCause());
+		}
+	}
+	
+	@Test
+	public void testToCompletableFutureCompletesInSettlingThread() {
+		final DeferredPromiseHandler<String> deferred = new DeferredPromiseHandler<>();
+		final CompletableFuture<String> future = toCompletableFuture(factory.promise(deferred));
+		
+		assertFalse(future.isDone());
+		deferred.resolve("value");
+		// No deferred invocation between resolving the promise and completing the future
+		assertEquals("value", future.getNow(null));
+	}
+	
+	@Test
+	public void testFromCompletionStage() throws Exception {
+		final CompletableFuture<String> future = new CompletableFuture<>();
+		final Promise<String> promise = fromCompletionStage(factory, future);
+		final AtomicReference<String> result = new AtomicReference<>();
+		final CountDownLatch latch = new CountDownLatch(1);
+		
+		promise.done(new VoidResolveCallback<String>() {
+			@Override
+			public void onResolve(final String value) {
+				result.set(value);
+				latch.countDown();
+			}
+		});
+		
+		future.complete("value");
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals("value", result.get());
+	}
+	
+	@Test
+	public void testSourceCancellationRejectsPromise() throws Exception {
+		final CompletableFuture<String> future = new CompletableFuture<>();
+		final Promise<String> promise = fromCompletionStage(factory, future);
+		final AtomicReference<Throwable> result = new AtomicReference<>();
+		final CountDownLatch latch = new CountDownLatch(1);
+		
+		promise.done(null, new VoidRejectCallback() {
+			@Override
+			public void onReject(final Throwable exception) {
+				result.set(exception);
+				latch.countDown();
+			}
+		});
+		
+		future.cancel(false);
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertTrue(result.get() instanceof CancellationException);
+	}
+	
+	@Test
+	public void testCancellationPropagatesToSource() {
+		final CompletableFuture<String> source = new CompletableFuture<>();
+		final CompletableFuture<String> converted = toCompletableFuture(fromCompletionStage(factory, source));
+		
+		assertTrue(converted.cancel(false));
+		assertTrue(source.isCancelled());
+	}
+	
+	@Test
+	public void testRoundTripReturnsSamePromise() {
+		final Promise<String> promise = factory.resolve("value");
+		assertSame(promise, fromCompletionStage(factory, toCompletableFuture(promise)));
+	}
+}
@@ -0,0 +1,82 @@
+package org.lucidfox.jpromises.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.helpers.TaskQueue;
+
+public class ContextPropagationTests {
+	private static final ThreadLocal<String> CONTEXT = new ThreadLocal<>();
+	
+	private final TaskQueue tasks = new TaskQueue();
+	private final List<String> seen = new ArrayList<>();
+	private PromiseFactory factory;
+	
+	@Before
+	public void setUp() {
+		factory = new PromiseFactory(tasks);
+		
+		factory.addContextPropagator(new ContextPropagator<String>() {
+			@Override
+			public String capture() {
+				return CONTEXT.get();
+			}
+
+			@Override
+			public String restore(final String context) {
+				final String previous = CONTEXT.get();
+				CONTEXT.set(context);
+				return previous;
+			}
+		});
+	}
+	
+	@Test
+	public void testContextRestoredInCallback() {
+		CONTEXT.set("request-1");
+		
+		factory.resolve("value").thenAccept(new VoidResolveCallback<String>() {
+			@Override
+			public void onResolve(final String value) {
+				seen.add(CONTEXT.get());
+			}
+		});
+		
+		CONTEXT.set("request-2");
+		tasks.runPendingTasks();
+		
+		assertEquals(1, seen.size());
+		assertEquals("request-1", seen.get(0));
+		assertEquals("request-2", CONTEXT.get());
+	}
+	
+	@Test
+	public void testContextRestoredInAsyncHandler() {
+		final List<Runnable> asyncTasks = new ArrayList<>();
+		CONTEXT.set("request-1");
+		
+		factory.runAsync(new ThrowingRunnable() {
+			@Override
+			public void run() {
+				seen.add(CONTEXT.get());
+			}
+		}, new AsyncRunner() {
+			@Override
+			public void runAsync(final Runnable task) {
+				asyncTasks.add(task);
+			}
+		});
+		
+		CONTEXT.remove();
+		asyncTasks.get(0).run();
+		
+		assertEquals(1, seen.size());
+		assertEquals("request-1", seen.get(0));
+		assertNull(CONTEXT.get());
+	}
+}
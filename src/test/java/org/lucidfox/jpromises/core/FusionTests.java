@@ -0,0 +1,131 @@
+package org.lucidfox.jpromises.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.helpers.TaskQueue;
+
+public class FusionTests {
+	private final TaskQueue tasks = new TaskQueue();
+	private final List<Resolver<Integer>> resolvers = new ArrayList<>();
+	private int dispatches;
+	private final PromiseFactory factory = new PromiseFactory(tasks);
+	
+	private void runPendingTasks() {
+		dispatches += tasks.runPendingTasks();
+	}
+	
+	private Promise<Integer> pending() {
+		return factory.promise(new PromiseHandler<Integer>() {
+			@Override
+			public void handle(final Resolver<Integer> resolve) {
+				resolvers.add(resolve);
+			}
+		});
+	}
+	
+	private static ValueResolveCallback<Integer, Integer> plus(final int addend) {
+		return new ValueResolveCallback<Integer, Integer>() {
+			@Override
+			public Integer onResolve(final Integer value) {
+				return value + addend;
+			}
+		};
+	}
+	
+	@Test
+	public void testLinearChainRunsInOneDispatch() {
+		final List<Integer> results = new ArrayList<>();
+		
+		final Promise<Void> last = pending().thenApply(plus(1)).thenApply(plus(10)).thenApply(plus(100))
+				.thenAccept(new VoidResolveCallback<Integer>() {
+					@Override
+					public void onResolve(final Integer value) {
+						results.add(value);
+					}
+				});
+		
+		resolvers.get(0).resolve(1000);
+		runPendingTasks();
+		
+		assertEquals(1, dispatches);
+		assertEquals(1, results.size());
+		assertEquals(Integer.valueOf(1111), results.get(0));
+		assertEquals(Promise.State.RESOLVED, last.getState());
+	}
+	
+	@Test
+	public void testRejectionPropagatesThroughFusedChain() {
+		final ArithmeticException exception = new ArithmeticException();
+		final List<Throwable> exceptions = new ArrayList<>();
+		
+		pending().thenApply(new ValueResolveCallback<Integer, Integer>() {
+			@Override
+			public Integer onResolve(final Integer value) {
+				throw exception;
+			}
+		}).thenApply(plus(1)).thenAccept(null, new VoidRejectCallback() {
+			@Override
+			public void onReject(final Throwable e) {
+				exceptions.add(e);
+			}
+		});
+		
+		resolvers.get(0).resolve(1);
+		runPendingTasks();
+		
+		assertEquals(1, dispatches);
+		assertEquals(1, exceptions.size());
+		assertSame(exception, exceptions.get(0));
+	}
+	
+	@Test
+	public void testSharedStageFallsBack() {
+		final List<Integer> results = new ArrayList<>();
+		final VoidResolveCallback<Integer> collect = new VoidResolveCallback<Integer>() {
+			@Override
+			public void onResolve(final Integer value) {
+				results.add(value);
+			}
+		};
+		
+		final Promise<Integer> shared = pending().thenApply(plus(1));
+		shared.thenApply(plus(10)).thenAccept(collect);
+		shared.thenApply(plus(20)).thenAccept(collect);
+		
+		resolvers.get(0).resolve(0);
+		runPendingTasks();
+		
+		// The root stage is fused into the dispatch of the root promise, but the shared stage is dispatched on its own
+		assertEquals(2, dispatches);
+		assertEquals(2, results.size());
+		assertEquals(Integer.valueOf(11), results.get(0));
+		assertEquals(Integer.valueOf(21), results.get(1));
+	}
+	
+	@Test
+	public void testLateSubscriberIsStillAsynchronous() {
+		final List<Integer> results = new ArrayList<>();
+		final Promise<Integer> stage = pending().thenApply(plus(1));
+		
+		resolvers.get(0).resolve(1);
+		runPendingTasks();
+		
+		stage.thenAccept(new VoidResolveCallback<Integer>() {
+			@Override
+			public void onResolve(final Integer value) {
+				results.add(value);
+			}
+		});
+		
+		assertTrue(results.isEmpty());
+		runPendingTasks();
+		assertEquals(1, results.size());
+		assertEquals(Integer.valueOf(2), results.get(0));
+	}
+}
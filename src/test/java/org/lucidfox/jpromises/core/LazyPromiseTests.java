@@ -0,0 +1,118 @@
+package org.lucidfox.jpromises.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.helpers.TaskQueue;
+
+public class LazyPromiseTests {
+	private final TaskQueue tasks = new TaskQueue();
+	private final AtomicInteger starts = new AtomicInteger();
+	private final PromiseFactory factory = new PromiseFactory(tasks);
+	
+	private final PromiseHandler<String> countingHandler = new PromiseHandler<String>() {
+		@Override
+		public void handle(final Resolver<String> resolve) {
+			resolve.resolve("started " + starts.incrementAndGet());
+		}
+	};
+	
+	@Test
+	public void testNotStartedWithoutSubscribers() {
+		factory.lazy(countingHandler);
+		tasks.runPendingTasks();
+		assertEquals(0, starts.get());
+	}
+	
+	@Test
+	public void testStartedOnFirstSubscription() {
+		final List<String> results = new ArrayList<>();
+		final Promise<String> promise = factory.lazy(countingHandler);
+		final VoidResolveCallback<String> callback = new VoidResolveCallback<String>() {
+			@Override
+			public void onResolve(final String value) {
+				results.add(value);
+			}
+		};
+		
+		promise.thenAccept(callback);
+		promise.done(callback);
+		assertEquals(1, starts.get());
+		
+		tasks.runPendingTasks();
+		assertEquals(2, results.size());
+		assertEquals("started 1", results.get(0));
+		assertEquals("started 1", results.get(1));
+	}
+	
+	@Test
+	public void testStartedByDone() {
+		factory.lazy(countingHandler).done(null);
+		assertEquals(1, starts.get());
+	}
+	
+	@Test
+	public void testLazySupplyAsync() {
+		final Queue<Runnable> asyncTasks = new ArrayDeque<>();
+		final Promise<String> promise = factory.lazySupplyAsync(new ThrowingSupplier<String>() {
+			@Override
+			public String get() {
+				starts.incrementAndGet();
+				return "foo";
+			}
+		}, new AsyncRunner() {
+			@Override
+			public void runAsync(final Runnable task) {
+				asyncTasks.add(task);
+			}
+		});
+		
+		assertTrue(asyncTasks.isEmpty());
+		promise.done(null);
+		assertEquals(1, asyncTasks.size());
+		asyncTasks.poll().run();
+		assertEquals(1, starts.get());
+	}
+	
+	@Test
+	public void testConcurrentSubscribersStartOnce() throws InterruptedException {
+		final int threadCount = 8;
+		
+		for (int attempt = 0; attempt < 50; attempt++) {
+			final Promise<String> promise = factory.lazy(countingHandler);
+			final CountDownLatch startLatch = new CountDownLatch(1);
+			final CountDownLatch doneLatch = new CountDownLatch(threadCount);
+			
+			for (int i = 0; i < threadCount; i++) {
+				new Thread() {
+					@Override
+					public void run() {
+						try {
+							startLatch.await();
+							promise.done(null);
+						} catch (final InterruptedException e) {
+							// Ignore
+						} finally {
+							doneLatch.countDown();
+						}
+					}
+				}.start();
+			}
+			
+			startLatch.countDown();
+			assertTrue(doneLatch.await(5, TimeUnit.SECONDS));
+		}
+		
+		assertEquals(50, starts.get());
+	}
+}
@@ -0,0 +1,88 @@
+package org.lucidfox.jpromises.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.helpers.TaskQueue;
+
+public class MultipleSubscriberTests {
+	private final TaskQueue tasks = new TaskQueue();
+	private final List<Resolver<String>> resolvers = new ArrayList<>();
+	private final List<Integer> order = new ArrayList<>();
+	private final PromiseFactory factory = new PromiseFactory(tasks);
+	
+	private Promise<String> pending() {
+		return factory.promise(new PromiseHandler<String>() {
+			@Override
+			public void handle(final Resolver<String> resolve) {
+				resolvers.add(resolve);
+			}
+		});
+	}
+	
+	private VoidResolveCallback<String> record(final int index) {
+		return new VoidResolveCallback<String>() {
+			@Override
+			public void onResolve(final String value) {
+				order.add(index);
+			}
+		};
+	}
+	
+	private static List<Integer> range(final int count) {
+		final List<Integer> list = new ArrayList<>(count);
+		
+		for (int i = 0; i < count; i++) {
+			list.add(i);
+		}
+		
+		return list;
+	}
+	
+	@Test
+	public void testSubscribersRunInRegistrationOrder() {
+		final Promise<String> promise = pending();
+		
+		for (int i = 0; i < 19; i++) {
+			if (i % 2 == 0) {
+				promise.thenAccept(record(i));
+			} else {
+				promise.done(record(i));
+			}
+		}
+		
+		resolvers.get(0).resolve("value");
+		tasks.runPendingTasks();
+		assertEquals(range(19), order);
+	}
+	
+	@Test
+	public void testSubscribersAddedAfterSettlement() {
+		final Promise<String> promise = pending();
+		promise.done(record(0));
+		resolvers.get(0).resolve("value");
+		promise.done(record(1));
+		promise.done(record(2));
+		
+		tasks.runPendingTasks();
+		assertEquals(range(3), order);
+		
+		promise.done(new VoidResolveCallback<String>() {
+			@Override
+			public void onResolve(final String value) {
+				order.add(3);
+				// Registered while the promise dispatches its subscribers
+				promise.done(record(5));
+			}
+		});
+		promise.done(record(4));
+		
+		tasks.runPendingTasks();
+		assertEquals(range(6), order);
+	}
+}
@@ -0,0 +1,104 @@
+package org.lucidfox.jpromises.core;
+
+import static org.junit.Assert.*;
+import static org.lucidfox.jpromises.CompletableFutures.toCompletableFuture;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lucidfox.jpromises.PromiseFactory;
+
+public class ProcessPromisesTests {
+	private final PromiseFactory factory = new PromiseFactory(new DeferredInvoker() {
+		@Override
+		public void invokeDeferred(final Runnable task) {
+			task.run();
+		}
+	});
+	
+	@Before
+	public void setUp() {
+		assumeTrue(new File("/bin/sh").canExecute());
+	}
+	
+	private static Process shell(final String command) throws IOException {
+		return new ProcessBuilder("/bin/sh", "-c", command).start();
+	}
+	
+	private static ProcessOutputListener collect(final ByteArrayOutputStream out) {
+		return new ProcessOutputListener() {
+			@Override
+			public void onOutput(final byte[] buffer, final int offset, final int length) {
+				out.write(buffer, offset, length);
+			}
+		};
+	}
+	
+	@Test
+	public void testExitCode() throws Exception {
+		final Process process = new ProcessBuilder("/bin/sh", "-c", "exit 3")
+				.redirectOutput(ProcessBuilder.Redirect.INHERIT).start();
+		assertEquals(Integer.valueOf(3), toCompletableFuture(factory.onExit(process)).get(5, TimeUnit.SECONDS));
+	}
+	
+	@Test
+	public void testStreamedOutput() throws Exception {
+		final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+		final ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+		final Process process = shell("echo out; sleep 0.1; echo err >&2; i=0; "
+				+ "while [ $i -lt 2000 ]; do echo line $i; i=$((i+1)); done; exit 5");
+		
+		assertEquals(Integer.valueOf(5), toCompletableFuture(factory.onExit(process, collect(stdout), collect(stderr)))
+				.get(10, TimeUnit.SECONDS));
+		
+		final String out = new String(stdout.toByteArray(), StandardCharsets.UTF_8);
+		assertTrue(out.startsWith("out\nline 0\n"));
+		assertTrue(out.endsWith("line 1999\n"));
+		assertEquals("err\n", new String(stderr.toByteArray(), StandardCharsets.UTF_8));
+	}
+	
+	@Test
+	public void testManyProcesses() throws Exception {
+		final ByteArrayOutputStream[] outputs = new ByteArrayOutputStream[8];
+		final List<CompletableFuture<Integer>> results = new ArrayList<>();
+		
+		for (int i = 0; i < outputs.length; i++) {
+			outputs[i] = new ByteArrayOutputStream();
+			results.add(toCompletableFuture(factory.onExit(shell("echo " + i + "; exit " + i), collect(outputs[i]),
+					null)));
+		}
+		
+		for (int i = 0; i < outputs.length; i++) {
+			assertEquals(Integer.valueOf(i), results.get(i).get(5, TimeUnit.SECONDS));
+			assertEquals(i + "\n", new String(outputs[i].toByteArray(), StandardCharsets.UTF_8));
+		}
+	}
+	
+	@Test
+	public void testListenerFailure() throws Exception {
+		final Exception exception = new Exception();
+		final Process process = shell("echo out");
+		
+		try {
+			toCompletableFuture(factory.onExit(process, new ProcessOutputListener() {
+				@Override
+				public void onOutput(final byte[] buffer, final int offset, final int length) throws Exception {
+					throw exception;
+				}
+			}, null)).get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (final ExecutionException e) {
+			assertSame(exception, e.getCause());
+		}
+	}
+}
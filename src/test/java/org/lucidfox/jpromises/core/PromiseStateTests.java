@@ -0,0 +1,131 @@
+package org.lucidfox.jpromises.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.helpers.TaskQueue;
+
+public class PromiseStateTests {
+	private final TaskQueue tasks = new TaskQueue();
+	private final PromiseFactory factory = new PromiseFactory(tasks);
+	
+	@Test
+	public void testStateAccessors() {
+		final List<Resolver<String>> resolvers = new ArrayList<>();
+		final Promise<String> promise = factory.promise(new PromiseHandler<String>() {
+			@Override
+			public void handle(final Resolver<String> resolve) {
+				resolvers.add(resolve);
+			}
+		});
+		
+		assertEquals(Promise.State.PENDING, promise.getState());
+		assertFalse(promise.isDone());
+		assertEquals("default", promise.getNow("default"));
+		assertNull(promise.getExceptionNow());
+		
+		resolvers.get(0).resolve("value");
+		
+		assertEquals(Promise.State.RESOLVED, promise.getState());
+		assertTrue(promise.isDone());
+		assertEquals("value", promise.getNow("default"));
+		assertNull(promise.getExceptionNow());
+		
+		final ArithmeticException exception = new ArithmeticException();
+		final Promise<String> rejected = factory.reject(exception);
+		
+		assertEquals(Promise.State.REJECTED, rejected.getState());
+		assertTrue(rejected.isDone());
+		assertEquals("default", rejected.getNow("default"));
+		assertSame(exception, rejected.getExceptionNow());
+	}
+	
+	@Test
+	public void testStateDoesNotStartLazyPromise() {
+		final Promise<String> promise = factory.lazy(new PromiseHandler<String>() {
+			@Override
+			public void handle(final Resolver<String> resolve) {
+				resolve.resolve("started");
+			}
+		});
+		
+		assertEquals(Promise.State.PENDING, promise.getState());
+		assertEquals("default", promise.getNow("default"));
+		assertEquals(Promise.State.PENDING, promise.getState());
+	}
+	
+	@Test
+	public void testThenSyncIfSettledRunsInline() {
+		final List<String> values = new ArrayList<>();
+		
+		final Promise<Integer> result = factory.resolve("value").thenSyncIfSettled(
+				new ResolveCallback<String, Integer>() {
+					@Override
+					public Thenable<Integer> onResolve(final String value) {
+						values.add(value);
+						return factory.resolve(value.length());
+					}
+				});
+		
+		assertEquals(1, values.size());
+		assertEquals("value", values.get(0));
+		
+		// The returned thenable is still chained through the deferred invoker
+		tasks.runPendingTasks();
+		assertEquals(Integer.valueOf(5), result.getNow(null));
+	}
+	
+	@Test
+	public void testThenSyncIfSettledRejected() {
+		final ArithmeticException exception = new ArithmeticException();
+		final List<Throwable> exceptions = new ArrayList<>();
+		
+		factory.<String>reject(exception).thenSyncIfSettled(null, new RejectCallback<Void>() {
+			@Override
+			public Thenable<Void> onReject(final Throwable e) {
+				exceptions.add(e);
+				return factory.resolve(null);
+			}
+		});
+		
+		assertEquals(1, exceptions.size());
+		assertSame(exception, exceptions.get(0));
+		
+		// Without a reject callback, the chained promise is rejected right away as well
+		final Promise<Object> chained = factory.reject(exception).thenSyncIfSettled(null);
+		assertSame(exception, chained.getExceptionNow());
+	}
+	
+	@Test
+	public void testThenSyncIfSettledFallsBackWhenPending() {
+		final List<Resolver<String>> resolvers = new ArrayList<>();
+		final List<String> values = new ArrayList<>();
+		
+		final Promise<String> promise = factory.promise(new PromiseHandler<String>() {
+			@Override
+			public void handle(final Resolver<String> resolve) {
+				resolvers.add(resolve);
+			}
+		});
+		
+		promise.thenSyncIfSettled(new ResolveCallback<String, Void>() {
+			@Override
+			public Thenable<Void> onResolve(final String value) {
+				values.add(value);
+				return null;
+			}
+		});
+		
+		resolvers.get(0).resolve("value");
+		assertTrue(values.isEmpty());
+		
+		tasks.runPendingTasks();
+		assertEquals(1, values.size());
+		assertEquals("value", values.get(0));
+	}
+}
@@ -0,0 +1,136 @@
+package org.lucidfox.jpromises.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.helpers.Capture;
+import org.lucidfox.jpromises.core.helpers.DeferredPromiseHandler;
+import org.lucidfox.jpromises.core.helpers.TaskQueue;
+import org.lucidfox.jpromises.forkjoin.ForkJoinPromiseFactory;
+
+public class ReduceAsCompletedTests {
+	private static final Combiner2<Long, Integer, Long> SUM = new Combiner2<Long, Integer, Long>() {
+		@Override
+		public Long combine(final Long a, final Integer b) {
+			return a + b;
+		}
+	};
+	
+	private final TaskQueue tasks = new TaskQueue();
+	private final PromiseFactory factory = new PromiseFactory(tasks);
+	
+	@Test
+	public void testFoldInCompletionOrder() {
+		final DeferredPromiseHandler<String> first = new DeferredPromiseHandler<>();
+		final DeferredPromiseHandler<String> second = new DeferredPromiseHandler<>();
+		final DeferredPromiseHandler<String> third = new DeferredPromiseHandler<>();
+		
+		final Capture<?> captured = Capture.of(factory.reduceAsCompleted(
+				Arrays.asList(factory.promise(first), factory.promise(second), factory.promise(third)), "",
+				new Combiner2<String, String, String>() {
+					@Override
+					public String combine(final String a, final String b) {
+						return a + b;
+					}
+				}));
+		
+		third.resolve("c");
+		tasks.runPendingTasks();
+		first.resolve("a");
+		tasks.runPendingTasks();
+		assertNull(captured.getValue());
+		
+		second.resolve("b");
+		tasks.runPendingTasks();
+		assertEquals("cab", captured.getValue());
+	}
+	
+	@Test
+	public void testEmpty() {
+		final Capture<?> captured = Capture.of(
+				factory.reduceAsCompleted(Collections.<Promise<Integer>>emptyList(), 7L, SUM));
+		tasks.runPendingTasks();
+		assertEquals(7L, captured.getValue());
+	}
+	
+	@Test
+	public void testRejection() {
+		final Exception exception = new Exception();
+		final Capture<?> captured = Capture.of(factory.reduceAsCompleted(
+				Arrays.asList(factory.resolve(1), factory.<Integer>reject(exception)), 0L, SUM));
+		tasks.runPendingTasks();
+		assertSame(exception, captured.getException());
+		assertNull(captured.getValue());
+	}
+	
+	@Test
+	public void testAccumulatorThrows() {
+		final Exception exception = new Exception();
+		final Capture<?> captured = Capture.of(factory.reduceAsCompleted(
+				Arrays.asList(factory.resolve(1), factory.resolve(2)), 0L, new Combiner2<Long, Integer, Long>() {
+					@Override
+					public Long combine(final Long a, final Integer b) throws Exception {
+						throw exception;
+					}
+				}));
+		tasks.runPendingTasks();
+		assertSame(exception, captured.getException());
+	}
+	
+	@Test
+	public void testParallel() throws InterruptedException {
+		final ForkJoinPool pool = new ForkJoinPool(4);
+		
+		try {
+			final ForkJoinPromiseFactory forkJoinFactory = new ForkJoinPromiseFactory(pool);
+			final List<Promise<Integer>> thenables = new ArrayList<>();
+			
+			for (int i = 1; i <= 1000; i++) {
+				final int value = i;
+				thenables.add(forkJoinFactory.supplyAsync(new ThrowingSupplier<Integer>() {
+					@Override
+					public Integer get() {
+						return value;
+					}
+				}, forkJoinFactory.getAsyncRunner()));
+			}
+			
+			final CountDownLatch latch = new CountDownLatch(1);
+			final AtomicReference<Long> sum = new AtomicReference<>();
+			
+			forkJoinFactory.reduceAsCompletedParallel(thenables, new ThrowingSupplier<Long>() {
+				@Override
+				public Long get() {
+					return 0L;
+				}
+			}, SUM, new Combiner2<Long, Long, Long>() {
+				@Override
+				public Long combine(final Long a, final Long b) {
+					return a + b;
+				}
+			}).thenAccept(new VoidResolveCallback<Long>() {
+				@Override
+				public void onResolve(final Long value) {
+					sum.set(value);
+					latch.countDown();
+				}
+			});
+			
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+			assertEquals(Long.valueOf(500500), sum.get());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+}
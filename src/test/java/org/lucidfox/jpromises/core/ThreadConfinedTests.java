@@ -0,0 +1,115 @@
+package org.lucidfox.jpromises.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.helpers.TaskQueue;
+
+public class ThreadConfinedTests {
+	private final TaskQueue tasks = new TaskQueue();
+	private final Thread invokerThread = Thread.currentThread();
+	private PromiseFactory factory;
+	
+	@Before
+	public void setUp() {
+		factory = new PromiseFactory(tasks) {
+			@Override
+			protected boolean isInvokerThread() {
+				return Thread.currentThread() == invokerThread;
+			}
+		};
+		
+		factory.setThreadConfined(true);
+		factory.setThreadConfinementChecked(true);
+	}
+	
+	@Test
+	public void testChainOnInvokerThread() {
+		final List<String> results = new ArrayList<>();
+		
+		factory.resolve(1).then(new ResolveCallback<Integer, Integer>() {
+			@Override
+			public Promise<Integer> onResolve(final Integer value) {
+				return factory.resolve(value + 1);
+			}
+		}).thenApply(new ValueResolveCallback<Integer, String>() {
+			@Override
+			public String onResolve(final Integer value) {
+				return "value " + value;
+			}
+		}).done(new VoidResolveCallback<String>() {
+			@Override
+			public void onResolve(final String value) {
+				results.add(value);
+			}
+		});
+		
+		tasks.runPendingTasks();
+		assertEquals(1, results.size());
+		assertEquals("value 2", results.get(0));
+	}
+	
+	@Test
+	public void testOffThreadUseIsDetected() throws InterruptedException {
+		final List<Resolver<String>> resolvers = new ArrayList<>();
+		
+		factory.promise(new PromiseHandler<String>() {
+			@Override
+			public void handle(final Resolver<String> resolve) {
+				resolvers.add(resolve);
+			}
+		});
+		
+		final AtomicReference<Throwable> thrown = new AtomicReference<>();
+		final Thread thread = new Thread() {
+			@Override
+			public void run() {
+				try {
+					resolvers.get(0).resolve("value");
+				} catch (final Throwable e) {
+					thrown.set(e);
+				}
+			}
+		};
+		
+		thread.start();
+		thread.join();
+		assertTrue(thrown.get() instanceof IllegalStateException);
+	}
+	
+	@Test
+	public void testAsyncHandlerSettlesOnInvokerThread() throws InterruptedException {
+		final List<String> results = new ArrayList<>();
+		
+		factory.supplyAsync(new ThrowingSupplier<String>() {
+			@Override
+			public String get() {
+				return "async";
+			}
+		}, new AsyncRunner() {
+			@Override
+			public void runAsync(final Runnable task) {
+				new Thread(task).start();
+			}
+		}).done(new VoidResolveCallback<String>() {
+			@Override
+			public void onResolve(final String value) {
+				results.add(value);
+			}
+		});
+		
+		while (results.isEmpty()) {
+			tasks.runNextTask(5, TimeUnit.SECONDS);
+		}
+		
+		assertEquals("async", results.get(0));
+	}
+}
@@ -0,0 +1,181 @@
+package org.lucidfox.jpromises.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.helpers.DeferredPromiseHandler;
+import org.lucidfox.jpromises.core.helpers.TaskQueue;
+
+public class UnhandledRejectionTests {
+	private final TaskQueue tasks = new TaskQueue();
+	private final List<Promise<?>> unhandled = new ArrayList<>();
+	private PromiseFactory factory;
+	
+	@Before
+	public void setUp() {
+		factory = new PromiseFactory(tasks);
+		
+		factory.setUnhandledRejectionHandler(new UnhandledRejectionHandler() {
+			@Override
+			public void onUnhandledRejection(final Promise<?> promise, final Throwable exception) {
+				unhandled.add(promise);
+			}
+		});
+	}
+	
+	@Test
+	public void testRejectedWithoutCallbacks() {
+		final Promise<Object> promise = factory.reject(new Exception());
+		tasks.runPendingTasks();
+		assertEquals(1, unhandled.size());
+		assertSame(promise, unhandled.get(0));
+	}
+	
+	@Test
+	public void testCallbackAddedBeforeRejection() {
+		final DeferredPromiseHandler<Object> deferred = new DeferredPromiseHandler<>();
+		factory.promise(deferred).onExceptionAccept(new VoidRejectCallback() {
+			@Override
+			public void onReject(final Throwable exception) {
+				// Handled
+			}
+		});
+		
+		deferred.reject(new Exception());
+		tasks.runPendingTasks();
+		assertTrue(unhandled.isEmpty());
+	}
+	
+	@Test
+	public void testCallbackAddedInSameTurn() {
+		factory.reject(new Exception()).onExceptionAccept(new VoidRejectCallback() {
+			@Override
+			public void onReject(final Throwable exception) {
+				// Handled
+			}
+		});
+		
+		tasks.runPendingTasks();
+		assertTrue(unhandled.isEmpty());
+	}
+	
+	@Test
+	public void testRejectionPropagatesToEndOfChain() {
+		final Promise<Void> last = factory.reject(new Exception()).thenAccept(new VoidResolveCallback<Object>() {
+			@Override
+			public void onResolve(final Object value) {
+				fail();
+			}
+		});
+		
+		tasks.runPendingTasks();
+		assertEquals(1, unhandled.size());
+		assertSame(last, unhandled.get(0));
+	}
+	
+	@Test
+	public void testResolvedNotReported() {
+		factory.resolve("value");
+		tasks.runPendingTasks();
+		assertTrue(unhandled.isEmpty());
+	}
+	
+	@Test
+	public void testRejectedPromiseReturnedFromCallback() {
+		factory.resolve("value").then(new ResolveCallback<String, Object>() {
+			@Override
+			public Promise<Object> onResolve(final String value) {
+				return factory.reject(new Exception());
+			}
+		}).onExceptionAccept(new VoidRejectCallback() {
+			@Override
+			public void onReject(final Throwable exception) {
+				// Handled
+			}
+		});
+		
+		tasks.runPendingTasks();
+		assertTrue(unhandled.isEmpty());
+	}
+	
+	@Test
+	public void testRejectedCombinatorInputs() {
+		final Promise<Object> rejected = factory.reject(new Exception());
+		final Promise<Object> pending = factory.promise(new DeferredPromiseHandler<Object>());
+		final VoidRejectCallback ignore = new VoidRejectCallback() {
+			@Override
+			public void onReject(final Throwable exception) {
+				// Handled
+			}
+		};
+		
+		factory.all(rejected, pending).onExceptionAccept(ignore);
+		factory.race(rejected, pending).onExceptionAccept(ignore);
+		factory.flatten(factory.resolve(rejected)).onExceptionAccept(ignore);
+		factory.promise(new PromiseHandler<Object>() {
+			@Override
+			public void handle(final Resolver<Object> resolve) {
+				resolve.deferResolve(rejected);
+			}
+		}).onExceptionAccept(ignore);
+		
+		tasks.runPendingTasks();
+		assertTrue(unhandled.isEmpty());
+	}
+	
+	@Test
+	public void testDoneCallbacks() {
+		final List<Object> results = new ArrayList<>();
+		final Exception exception = new Exception();
+		
+		factory.resolve("value").done(new VoidResolveCallback<String>() {
+			@Override
+			public void onResolve(final String value) {
+				results.add(value);
+			}
+		});
+		
+		factory.reject(exception).done(null, new VoidRejectCallback() {
+			@Override
+			public void onReject(final Throwable e) {
+				results.add(e);
+			}
+		});
+		
+		tasks.runPendingTasks();
+		assertEquals(2, results.size());
+		assertEquals("value", results.get(0));
+		assertSame(exception, results.get(1));
+		assertTrue(unhandled.isEmpty());
+	}
+	
+	@Test
+	public void testDoneReportsUnhandled() {
+		final Promise<String> resolved = factory.resolve("value");
+		resolved.done(new VoidResolveCallback<String>() {
+			@Override
+			public void onResolve(final String value) throws Exception {
+				throw new Exception();
+			}
+		});
+		
+		final Promise<String> rejected = factory.reject(new Exception());
+		rejected.done(new VoidResolveCallback<String>() {
+			@Override
+			public void onResolve(final String value) {
+				fail();
+			}
+		});
+		
+		tasks.runPendingTasks();
+		assertEquals(2, unhandled.size());
+		assertSame(resolved, unhandled.get(0));
+		assertSame(rejected, unhandled.get(1));
+	}
+}
@@ -0,0 +1,91 @@
+package org.lucidfox.jpromises.core;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.helpers.Capture;
+import org.lucidfox.jpromises.core.helpers.DeferredPromiseHandler;
+import org.lucidfox.jpromises.core.helpers.TaskQueue;
+
+public class ZipTests {
+	private final TaskQueue tasks = new TaskQueue();
+	private final PromiseFactory factory = new PromiseFactory(tasks);
+	
+	@Test
+	public void testZip2() {
+		final DeferredPromiseHandler<String> name = new DeferredPromiseHandler<>();
+		final DeferredPromiseHandler<Integer> age = new DeferredPromiseHandler<>();
+		
+		final Capture<?> captured = Capture.of(factory.zip(factory.promise(name), factory.promise(age),
+				new Combiner2<String, Integer, String>() {
+					@Override
+					public String combine(final String a, final Integer b) {
+						return a + " is " + b;
+					}
+				}));
+		
+		age.resolve(42);
+		tasks.runPendingTasks();
+		assertNull(captured.getValue());
+		
+		name.resolve("Alice");
+		tasks.runPendingTasks();
+		assertEquals("Alice is 42", captured.getValue());
+	}
+	
+	@Test
+	public void testZip8() {
+		final Capture<?> captured = Capture.of(factory.zip(factory.resolve(1), factory.resolve(2L),
+				factory.resolve("3"), factory.resolve('4'), factory.resolve(5.0), factory.resolve(6.0f),
+				factory.resolve((short) 7), factory.resolve((byte) 8),
+				new Combiner8<Integer, Long, String, Character, Double, Float, Short, Byte, String>() {
+					@Override
+					public String combine(final Integer a, final Long b, final String c, final Character d,
+							final Double e, final Float f, final Short g, final Byte h) {
+						return "" + a + b + c + d + e.intValue() + f.intValue() + g + h;
+					}
+				}));
+		
+		tasks.runPendingTasks();
+		assertEquals("12345678", captured.getValue());
+	}
+	
+	@Test
+	public void testRejection() {
+		final Exception exception = new Exception();
+		final DeferredPromiseHandler<String> pending = new DeferredPromiseHandler<>();
+		
+		final Capture<?> captured = Capture.of(factory.zip(factory.promise(pending), factory.<Integer>reject(exception),
+				new Combiner2<String, Integer, String>() {
+					@Override
+					public String combine(final String a, final Integer b) {
+						fail();
+						return null;
+					}
+				}));
+		
+		tasks.runPendingTasks();
+		assertSame(exception, captured.getException());
+		
+		pending.resolve("late");
+		tasks.runPendingTasks();
+		assertNull(captured.getValue());
+	}
+	
+	@Test
+	public void testCombinerThrows() {
+		final Exception exception = new Exception();
+		
+		final Capture<?> captured = Capture.of(factory.zip(factory.resolve("a"), factory.resolve("b"),
+				new Combiner2<String, String, String>() {
+					@Override
+					public String combine(final String a, final String b) throws Exception {
+						throw exception;
+					}
+				}));
+		
+		tasks.runPendingTasks();
+		assertSame(exception, captured.getException());
+	}
+}
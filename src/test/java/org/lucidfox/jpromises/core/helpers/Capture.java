@@ -0,0 +1,49 @@
+package org.lucidfox.jpromises.core.helpers;
+
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.core.VoidRejectCallback;
+import org.lucidfox.jpromises.core.VoidResolveCallback;
+
+/**
+ * Records the value or exception a promise is settled with.
+ * 
+ * @param <V> the value type of the promise
+ */
+public final class Capture<V> {
+	private V value;
+	private Throwable exception;
+	
+	private Capture() { }
+	
+	public static <V> Capture<V> of(final Promise<V> promise) {
+		final Capture<V> capture = new Capture<>();
+		
+		promise.thenAccept(new VoidResolveCallback<V>() {
+			@Override
+			public void onResolve(final V resolvedValue) {
+				capture.value = resolvedValue;
+			}
+		}, new VoidRejectCallback() {
+			@Override
+			public void onReject(final Throwable rejectedException) {
+				capture.exception = rejectedException;
+			}
+		});
+		
+		return capture;
+	}
+	
+	/**
+	 * @return the value the promise was resolved with, or {@code null} if it is not resolved (yet)
+	 */
+	public V getValue() {
+		return value;
+	}
+	
+	/**
+	 * @return the exception the promise was rejected with, or {@code null} if it is not rejected (yet)
+	 */
+	public Throwable getException() {
+		return exception;
+	}
+}
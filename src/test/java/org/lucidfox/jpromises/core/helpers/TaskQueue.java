@@ -0,0 +1,70 @@
+package org.lucidfox.jpromises.core.helpers;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.lucidfox.jpromises.core.DeferredInvoker;
+
+/**
+ * A deferred invoker that queues tasks until the test runs them, so that tests can step through deferred invocations
+ * on the test thread. Tasks may be queued from any thread.
+ */
+public class TaskQueue implements DeferredInvoker {
+	private final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>();
+	
+	@Override
+	public void invokeDeferred(final Runnable task) {
+		tasks.add(task);
+	}
+	
+	/**
+	 * Runs queued tasks, including the ones they queue, until the queue is empty.
+	 * 
+	 * @return the number of tasks run
+	 */
+	public int runPendingTasks() {
+		int count = 0;
+		Runnable task;
+		
+		while ((task = tasks.poll()) != null) {
+			count++;
+			task.run();
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Runs the oldest queued task, failing if there is none.
+	 */
+	public void runNextTask() {
+		final Runnable task = tasks.poll();
+		assertNotNull(task);
+		task.run();
+	}
+	
+	/**
+	 * Runs the oldest queued task, waiting for one to be queued by another thread if needed, failing if none is
+	 * queued in time.
+	 * 
+	 * @param timeout the maximum time to wait
+	 * @param unit the time unit of {@code timeout}
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void runNextTask(final long timeout, final TimeUnit unit) throws InterruptedException {
+		final Runnable task = tasks.poll(timeout, unit);
+		assertNotNull(task);
+		task.run();
+	}
+	
+	public int size() {
+		return tasks.size();
+	}
+	
+	public boolean isEmpty() {
+		return tasks.isEmpty();
+	}
+}
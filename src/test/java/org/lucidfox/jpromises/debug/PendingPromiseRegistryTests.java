@@ -0,0 +1,102 @@
+package org.lucidfox.jpromises.debug;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.PromiseHandler;
+import org.lucidfox.jpromises.core.Resolver;
+import org.lucidfox.jpromises.core.helpers.DeferredPromiseHandler;
+import org.lucidfox.jpromises.core.helpers.TaskQueue;
+
+public class PendingPromiseRegistryTests {
+	private final TaskQueue tasks = new TaskQueue();
+	private PromiseFactory factory;
+	private PendingPromiseRegistry registry;
+	
+	@Before
+	public void setUp() {
+		factory = new PromiseFactory(tasks);
+		
+		registry = PendingPromiseRegistry.install(factory, true);
+	}
+	
+	@Test
+	public void testSettledPromisesAreRemoved() {
+		final DeferredPromiseHandler<String> resolved = new DeferredPromiseHandler<>();
+		final DeferredPromiseHandler<String> rejected = new DeferredPromiseHandler<>();
+		final DeferredPromiseHandler<String> pending = new DeferredPromiseHandler<>();
+		factory.promise(resolved);
+		factory.promise(rejected);
+		factory.promise(pending);
+		assertEquals(3, registry.getPendingCount());
+		
+		resolved.resolve("foo");
+		rejected.reject(new Exception());
+		assertEquals(1, registry.getPendingCount());
+		
+		pending.resolve("bar");
+		assertEquals(0, registry.getPendingCount());
+		assertEquals(0, registry.getLeakCount());
+	}
+	
+	@Test
+	public void testDumpOldest() {
+		final DeferredPromiseHandler<String> first = new DeferredPromiseHandler<>();
+		final DeferredPromiseHandler<String> second = new DeferredPromiseHandler<>();
+		factory.promise(first);
+		factory.promise(second);
+		
+		assertEquals(1, registry.getOldest(1).size());
+		assertEquals(2, registry.getOldest(5).size());
+		
+		final String dump = registry.dumpOldest(5);
+		assertTrue(dump.startsWith("2 pending promise(s)"));
+		assertTrue(dump.contains("testDumpOldest"));
+		
+		first.resolve("foo");
+		second.resolve("bar");
+	}
+	
+	@Test
+	public void testDroppedResolverIsReportedAsLeak() throws InterruptedException {
+		final List<Long> leakAges = new ArrayList<>();
+		
+		registry.setLeakHandler(new PendingPromiseRegistry.LeakHandler() {
+			@Override
+			public void onLeak(final Throwable creationSite, final long ageNanos) {
+				assertNotNull(creationSite);
+				leakAges.add(ageNanos);
+			}
+		});
+		
+		factory.promise(new PromiseHandler<Object>() {
+			@Override
+			public void handle(final Resolver<Object> resolver) {
+				// Drop the resolver
+			}
+		});
+		
+		for (int i = 0; i < 50 && registry.getLeakCount() == 0; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		
+		assertEquals(1, registry.getLeakCount());
+		assertEquals(0, registry.getPendingCount());
+		assertEquals(1, leakAges.size());
+	}
+	
+	@Test
+	public void testUntrackedFactory() {
+		factory.setPromiseTracker(null);
+		final Promise<String> promise = factory.resolve("foo");
+		assertNotNull(promise);
+		assertEquals(0, registry.getPendingCount());
+	}
+}
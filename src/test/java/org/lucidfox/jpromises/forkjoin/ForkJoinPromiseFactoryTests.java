@@ -0,0 +1,115 @@
+package org.lucidfox.jpromises.forkjoin;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.core.ThrowingSupplier;
+import org.lucidfox.jpromises.core.ValueResolveCallback;
+import org.lucidfox.jpromises.core.VoidRejectCallback;
+import org.lucidfox.jpromises.core.VoidResolveCallback;
+
+public class ForkJoinPromiseFactoryTests {
+	private ForkJoinPool pool;
+	private ForkJoinPromiseFactory factory;
+	
+	@Before
+	public void setUp() {
+		pool = new ForkJoinPool(4);
+		factory = new ForkJoinPromiseFactory(pool);
+	}
+	
+	@After
+	public void tearDown() {
+		pool.shutdownNow();
+	}
+	
+	@Test
+	public void testCallbacksRunOnPool() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicReference<Thread> callbackThread = new AtomicReference<>();
+		final AtomicInteger result = new AtomicInteger();
+		
+		factory.supplyAsync(new ThrowingSupplier<Integer>() {
+			@Override
+			public Integer get() {
+				return 20;
+			}
+		}, factory.getAsyncRunner()).thenApply(new ValueResolveCallback<Integer, Integer>() {
+			@Override
+			public Integer onResolve(final Integer value) {
+				return value + 1;
+			}
+		}).thenAccept(new VoidResolveCallback<Integer>() {
+			@Override
+			public void onResolve(final Integer value) {
+				callbackThread.set(Thread.currentThread());
+				result.set(value * 2);
+				latch.countDown();
+			}
+		});
+		
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertEquals(42, result.get());
+		assertTrue(callbackThread.get() instanceof ForkJoinWorkerThread);
+		assertSame(pool, ((ForkJoinWorkerThread) callbackThread.get()).getPool());
+	}
+	
+	@Test
+	public void testTasksFromWorkerStayLocal() throws Exception {
+		final ForkJoinPool singleWorkerPool = new ForkJoinPool(1);
+		final ForkJoinInvoker invoker = new ForkJoinInvoker(singleWorkerPool);
+		final AtomicInteger queuedLocally = new AtomicInteger(-1);
+		final CountDownLatch latch = new CountDownLatch(1);
+		
+		try {
+			singleWorkerPool.execute(new Runnable() {
+				@Override
+				public void run() {
+					invoker.invokeDeferred(new Runnable() {
+						@Override
+						public void run() {
+							latch.countDown();
+						}
+					});
+					
+					queuedLocally.set(ForkJoinTask.getQueuedTaskCount());
+				}
+			});
+			
+			assertTrue(latch.await(5, TimeUnit.SECONDS));
+			assertEquals(1, queuedLocally.get());
+		} finally {
+			singleWorkerPool.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testRejectionPropagates() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final Exception exception = new Exception();
+		final AtomicReference<Throwable> rejected = new AtomicReference<>();
+		
+		final Promise<Object> promise = factory.reject(exception);
+		promise.onExceptionAccept(new VoidRejectCallback() {
+			@Override
+			public void onReject(final Throwable e) {
+				rejected.set(e);
+				latch.countDown();
+			}
+		});
+		
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		assertSame(exception, rejected.get());
+	}
+}
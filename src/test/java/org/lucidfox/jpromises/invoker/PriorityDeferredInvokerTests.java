@@ -0,0 +1,158 @@
+package org.lucidfox.jpromises.invoker;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.UnhandledRejectionHandler;
+import org.lucidfox.jpromises.core.VoidResolveCallback;
+import org.lucidfox.jpromises.core.helpers.TaskQueue;
+
+public class PriorityDeferredInvokerTests {
+	private final TaskQueue platformTasks = new TaskQueue();
+	private final List<String> log = new ArrayList<>();
+	
+	private Runnable logTask(final String name) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				log.add(name);
+			}
+		};
+	}
+	
+	@Test
+	public void testHighLanesDrainFirst() {
+		final PriorityDeferredInvoker invoker = new PriorityDeferredInvoker(platformTasks, 3);
+		invoker.invokeDeferred(logTask("low1"));
+		invoker.lane(1).invokeDeferred(logTask("mid1"));
+		invoker.lane(2).invokeDeferred(logTask("high1"));
+		invoker.invokeDeferred(logTask("low2"));
+		invoker.lane(2).invokeDeferred(logTask("high2"));
+		
+		assertEquals(1, platformTasks.size());
+		platformTasks.runPendingTasks();
+		assertEquals(Arrays.asList("high1", "high2", "mid1", "low1", "low2"), log);
+	}
+	
+	@Test
+	public void testTasksAddedWhileDraining() {
+		final PriorityDeferredInvoker invoker = new PriorityDeferredInvoker(platformTasks, 2);
+		
+		invoker.invokeDeferred(new Runnable() {
+			@Override
+			public void run() {
+				log.add("low1");
+				invoker.lane(1).invokeDeferred(logTask("high"));
+			}
+		});
+		invoker.invokeDeferred(logTask("low2"));
+		
+		platformTasks.runPendingTasks();
+		assertEquals(Arrays.asList("low1", "high", "low2"), log);
+	}
+	
+	@Test
+	public void testPassYieldsToPlatform() {
+		final PriorityDeferredInvoker invoker = new PriorityDeferredInvoker(platformTasks, 2);
+		
+		invoker.invokeDeferred(new Runnable() {
+			@Override
+			public void run() {
+				log.add("task");
+				
+				// Each task queues another, so a drain that ran until empty would never return
+				if (log.size() < 100) {
+					invoker.invokeDeferred(this);
+				}
+			}
+		});
+		
+		platformTasks.runNextTask();
+		assertEquals(1, log.size());
+		assertEquals(1, platformTasks.size());
+		
+		platformTasks.runPendingTasks();
+		assertEquals(100, log.size());
+	}
+	
+	@Test
+	public void testStarvationGuard() {
+		final PriorityDeferredInvoker invoker = new PriorityDeferredInvoker(platformTasks, 2, 2);
+		invoker.invokeDeferred(logTask("low"));
+		
+		for (int i = 0; i < 4; i++) {
+			invoker.lane(1).invokeDeferred(logTask("high" + i));
+		}
+		
+		platformTasks.runPendingTasks();
+		assertEquals(Arrays.asList("high0", "high1", "low", "high2", "high3"), log);
+	}
+	
+	@Test
+	public void testThrowingTaskDoesNotStrandOthers() {
+		final PriorityDeferredInvoker invoker = new PriorityDeferredInvoker(platformTasks, 2);
+		
+		invoker.lane(1).invokeDeferred(new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalStateException();
+			}
+		});
+		invoker.invokeDeferred(logTask("low"));
+		
+		try {
+			platformTasks.runNextTask();
+			fail();
+		} catch (final IllegalStateException e) {
+			// Expected
+		}
+		
+		platformTasks.runPendingTasks();
+		assertEquals(Arrays.asList("low"), log);
+	}
+	
+	@Test
+	public void testFactoryWithPriority() {
+		final PromiseFactory factory = new PromiseFactory(new PriorityDeferredInvoker(platformTasks, 2));
+		final UnhandledRejectionHandler handler = new UnhandledRejectionHandler() {
+			@Override
+			public void onUnhandledRejection(final Promise<?> promise, final Throwable exception) {
+				// Ignore
+			}
+		};
+		factory.setUnhandledRejectionHandler(handler);
+		
+		final PromiseFactory urgentFactory = factory.withPriority(1);
+		assertNotSame(factory, urgentFactory);
+		assertSame(handler, urgentFactory.getUnhandledRejectionHandler());
+		assertSame(factory, factory.withPriority(0));
+		
+		factory.resolve("low").thenAccept(new VoidResolveCallback<String>() {
+			@Override
+			public void onResolve(final String value) {
+				log.add(value);
+			}
+		});
+		urgentFactory.resolve("high").thenAccept(new VoidResolveCallback<String>() {
+			@Override
+			public void onResolve(final String value) {
+				log.add(value);
+			}
+		});
+		
+		platformTasks.runPendingTasks();
+		assertEquals(Arrays.asList("high", "low"), log);
+	}
+	
+	@Test
+	public void testPriorityIgnoredWithoutLanes() {
+		final PromiseFactory factory = new PromiseFactory(platformTasks);
+		assertSame(factory, factory.withPriority(5));
+	}
+}
@@ -0,0 +1,94 @@
+package org.lucidfox.jpromises.invoker;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.lucidfox.jpromises.core.helpers.TaskQueue;
+
+public class TimeSlicedDeferredInvokerTests {
+	private final TaskQueue platformTasks = new TaskQueue();
+	private int tasksRun;
+	
+	private Runnable sleepingTask(final long millis) {
+		return new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(millis);
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				
+				tasksRun++;
+			}
+		};
+	}
+	
+	@Test
+	public void testFastTasksRunInOneSlice() {
+		final TimeSlicedDeferredInvoker invoker = new TimeSlicedDeferredInvoker(platformTasks, 1, TimeUnit.SECONDS);
+		
+		for (int i = 0; i < 100; i++) {
+			invoker.invokeDeferred(sleepingTask(0));
+		}
+		
+		assertEquals(1, platformTasks.size());
+		platformTasks.runNextTask();
+		assertEquals(100, tasksRun);
+		assertTrue(platformTasks.isEmpty());
+		assertEquals(1, invoker.getSliceCount());
+		assertEquals(0, invoker.getYieldCount());
+	}
+	
+	@Test
+	public void testSlowTasksYield() {
+		final TimeSlicedDeferredInvoker invoker = new TimeSlicedDeferredInvoker(platformTasks, 5,
+				TimeUnit.MILLISECONDS);
+		
+		for (int i = 0; i < 3; i++) {
+			invoker.invokeDeferred(sleepingTask(10));
+		}
+		
+		platformTasks.runNextTask();
+		assertEquals(1, tasksRun);
+		assertEquals(1, platformTasks.size());
+		assertEquals(2, invoker.getQueuedTaskCount());
+		
+		platformTasks.runPendingTasks();
+		
+		assertEquals(3, tasksRun);
+		assertEquals(3, invoker.getSliceCount());
+		assertEquals(2, invoker.getYieldCount());
+		assertTrue(invoker.getLongestTaskNanos() >= TimeUnit.MILLISECONDS.toNanos(10));
+		
+		invoker.resetStatistics();
+		assertEquals(0, invoker.getSliceCount());
+		assertEquals(0, invoker.getLongestTaskNanos());
+	}
+	
+	@Test
+	public void testThrowingTaskDoesNotStrandOthers() {
+		final TimeSlicedDeferredInvoker invoker = new TimeSlicedDeferredInvoker(platformTasks, 1, TimeUnit.SECONDS);
+		
+		invoker.invokeDeferred(new Runnable() {
+			@Override
+			public void run() {
+				throw new IllegalStateException();
+			}
+		});
+		invoker.invokeDeferred(sleepingTask(0));
+		
+		try {
+			platformTasks.runNextTask();
+			fail();
+		} catch (final IllegalStateException e) {
+			// Expected
+		}
+		
+		assertEquals(1, platformTasks.size());
+		platformTasks.runNextTask();
+		assertEquals(1, tasksRun);
+	}
+}
@@ -0,0 +1,90 @@
+package org.lucidfox.jpromises.metrics;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.VoidResolveCallback;
+import org.lucidfox.jpromises.core.helpers.DeferredPromiseHandler;
+import org.lucidfox.jpromises.core.helpers.TaskQueue;
+
+public class PromiseMetricsTests {
+	private final TaskQueue tasks = new TaskQueue();
+	private PromiseFactory factory;
+	private PromiseMetrics metrics;
+	
+	@Before
+	public void setUp() {
+		factory = new PromiseFactory(tasks);
+		
+		metrics = PromiseMetrics.install(factory);
+	}
+	
+	@Test
+	public void testLifecycleCounts() {
+		final DeferredPromiseHandler<String> deferred = new DeferredPromiseHandler<>();
+		factory.promise(deferred);
+		factory.resolve("value");
+		factory.reject(new Exception());
+		
+		assertEquals(3, metrics.getCreatedCount());
+		assertEquals(1, metrics.getResolvedCount());
+		assertEquals(1, metrics.getRejectedCount());
+		assertEquals(1, metrics.getPendingCount());
+		
+		deferred.resolve("value");
+		assertEquals(0, metrics.getPendingCount());
+		assertEquals(3, metrics.getSettleTimeHistogram().getCount());
+	}
+	
+	@Test
+	public void testCallbacksAndOutstandingTasks() {
+		factory.resolve("value").thenAccept(new VoidResolveCallback<String>() {
+			@Override
+			public void onResolve(final String value) {
+				// Do nothing
+			}
+		});
+		
+		assertTrue(metrics.getOutstandingTaskCount() > 0);
+		assertEquals(0, metrics.getCallbackCount());
+		
+		tasks.runPendingTasks();
+		
+		assertEquals(0, metrics.getOutstandingTaskCount());
+		assertEquals(1, metrics.getCallbackCount());
+		assertEquals(1, metrics.getCallbackTimeHistogram().getCount());
+		assertEquals(0, metrics.getPendingCount());
+	}
+	
+	@Test
+	public void testConcurrentHistogram() throws InterruptedException {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		final Thread[] threads = new Thread[4];
+		
+		for (int i = 0; i < threads.length; i++) {
+			final int offset = i;
+			
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 1; j <= 10000; j++) {
+						histogram.record(j + offset);
+					}
+				}
+			});
+			
+			threads[i].start();
+		}
+		
+		for (final Thread thread: threads) {
+			thread.join();
+		}
+		
+		assertEquals(40000, histogram.getCount());
+		assertEquals(10003, histogram.getMax());
+		assertEquals(5002, histogram.getMean(), 0.001);
+		assertEquals(8191, histogram.getPercentile(50));
+	}
+}
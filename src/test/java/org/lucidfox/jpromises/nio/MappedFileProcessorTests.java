@@ -0,0 +1,187 @@
+package org.lucidfox.jpromises.nio;
+
+import static org.junit.Assert.*;
+import static org.lucidfox.jpromises.CompletableFutures.toCompletableFuture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.AsyncRunner;
+import org.lucidfox.jpromises.core.Combiner2;
+import org.lucidfox.jpromises.core.DeferredInvoker;
+
+public class MappedFileProcessorTests {
+	private final PromiseFactory factory = new PromiseFactory(new DeferredInvoker() {
+		@Override
+		public void invokeDeferred(final Runnable task) {
+			task.run();
+		}
+	});
+	
+	private final AtomicInteger running = new AtomicInteger();
+	private final AtomicInteger maxRunning = new AtomicInteger();
+	private ExecutorService executor;
+	private MappedFileProcessor processor;
+	private Path file;
+	
+	@Before
+	public void setUp() throws IOException {
+		executor = Executors.newFixedThreadPool(4);
+		processor = new MappedFileProcessor(factory, new AsyncRunner() {
+			@Override
+			public void runAsync(final Runnable task) {
+				executor.execute(task);
+			}
+		}, 64, (byte) '\n', 2);
+		file = Files.createTempFile("jpromises", ".log");
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		executor.shutdown();
+		Files.deleteIfExists(file);
+	}
+	
+	private final ChunkProcessor<Integer> lineCounter = new ChunkProcessor<Integer>() {
+		@Override
+		public Integer process(final ByteBuffer chunk, final long offset) throws InterruptedException {
+			final int now = running.incrementAndGet();
+			
+			while (true) {
+				final int max = maxRunning.get();
+				
+				if (now <= max || maxRunning.compareAndSet(max, now)) {
+					break;
+				}
+			}
+			
+			Thread.sleep(1);
+			
+			int lines = 0;
+			
+			while (chunk.hasRemaining()) {
+				if (chunk.get() == '\n') {
+					lines++;
+				}
+			}
+			
+			// Records are never split: every chunk ends with a complete line
+			assertEquals('\n', chunk.get(chunk.limit() - 1));
+			running.decrementAndGet();
+			return lines;
+		}
+	};
+	
+	private void writeLines(final int count, final int longLine) throws IOException {
+		final StringBuilder builder = new StringBuilder();
+		
+		for (int i = 0; i < count; i++) {
+			builder.append("line ").append(i);
+			
+			if (i == longLine) {
+				for (int j = 0; j < 300; j++) {
+					builder.append('x');
+				}
+			}
+			
+			builder.append('\n');
+		}
+		
+		Files.write(file, builder.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+	
+	@Test
+	public void testChunksAlignedAndBounded() throws Exception {
+		writeLines(1000, 500);
+		
+		final List<Integer> counts = toCompletableFuture(processor.process(file, lineCounter)).get(10,
+				TimeUnit.SECONDS);
+		assertTrue(counts.size() > 100);
+		
+		int total = 0;
+		
+		for (final int count: counts) {
+			total += count;
+		}
+		
+		assertEquals(1000, total);
+		assertTrue(maxRunning.get() <= 2);
+	}
+	
+	@Test
+	public void testFold() throws Exception {
+		writeLines(123, -1);
+		
+		final Promise<Integer> totalPromise = processor.process(file, lineCounter, 0,
+				new Combiner2<Integer, Integer, Integer>() {
+					@Override
+					public Integer combine(final Integer accumulated, final Integer count) {
+						return accumulated + count;
+					}
+				});
+		
+		assertEquals(Integer.valueOf(123), toCompletableFuture(totalPromise).get(10, TimeUnit.SECONDS));
+	}
+	
+	@Test
+	public void testInlineRunnerWithManyChunks() throws Exception {
+		writeLines(50000, -1);
+		
+		final MappedFileProcessor inlineProcessor = new MappedFileProcessor(factory, new AsyncRunner() {
+			@Override
+			public void runAsync(final Runnable task) {
+				task.run();
+			}
+		}, 1, (byte) '\n', 2);
+		
+		final List<Integer> counts = toCompletableFuture(inlineProcessor.process(file, new ChunkProcessor<Integer>() {
+			@Override
+			public Integer process(final ByteBuffer chunk, final long offset) {
+				return chunk.remaining();
+			}
+		})).get(10, TimeUnit.SECONDS);
+		
+		assertEquals(50000, counts.size());
+	}
+	
+	@Test
+	public void testEmptyFile() throws Exception {
+		assertTrue(toCompletableFuture(processor.process(file, lineCounter)).get(10, TimeUnit.SECONDS).isEmpty());
+	}
+	
+	@Test
+	public void testFailingChunk() throws Exception {
+		writeLines(100, -1);
+		final IllegalStateException exception = new IllegalStateException();
+		
+		try {
+			toCompletableFuture(processor.process(file, new ChunkProcessor<Void>() {
+				@Override
+				public Void process(final ByteBuffer chunk, final long offset) {
+					if (offset > 0) {
+						throw exception;
+					}
+					
+					return null;
+				}
+			})).get(10, TimeUnit.SECONDS);
+			fail();
+		} catch (final ExecutionException e) {
+			assertSame(exception, e.getCause());
+		}
+	}
+}
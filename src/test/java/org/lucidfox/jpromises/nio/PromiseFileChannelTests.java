@@ -0,0 +1,145 @@
+package org.lucidfox.jpromises.nio;
+
+import static org.junit.Assert.*;
+import static org.lucidfox.jpromises.CompletableFutures.toCompletableFuture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.DeferredInvoker;
+
+public class PromiseFileChannelTests {
+	private final PromiseFactory factory = new PromiseFactory(new DeferredInvoker() {
+		@Override
+		public void invokeDeferred(final Runnable task) {
+			task.run();
+		}
+	});
+	
+	private final DirectBufferPool pool = new DirectBufferPool(16, 1024, 4);
+	private Path source;
+	private Path target;
+	
+	@Before
+	public void setUp() throws IOException {
+		source = Files.createTempFile("jpromises", ".src");
+		target = Files.createTempFile("jpromises", ".dst");
+	}
+	
+	@After
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(source);
+		Files.deleteIfExists(target);
+	}
+	
+	private static byte[] content(final int length) {
+		final byte[] bytes = new byte[length];
+		
+		for (int i = 0; i < length; i++) {
+			bytes[i] = (byte) (i * 31);
+		}
+		
+		return bytes;
+	}
+	
+	@Test
+	public void testBufferPool() {
+		final ByteBuffer small = pool.acquire(10);
+		assertTrue(small.isDirect());
+		assertEquals(16, small.capacity());
+		assertEquals(10, small.limit());
+		
+		final ByteBuffer medium = pool.acquire(100);
+		assertEquals(128, medium.capacity());
+		
+		pool.release(small);
+		pool.release(medium);
+		assertEquals(2, pool.getFreeBufferCount());
+		
+		final ByteBuffer reused = pool.acquire(12);
+		assertSame(small, reused);
+		assertEquals(0, reused.position());
+		assertEquals(12, reused.limit());
+		assertEquals(1, pool.getFreeBufferCount());
+		
+		// Too large for the pool, so not kept when released
+		final ByteBuffer large = pool.acquire(5000);
+		assertEquals(5000, large.capacity());
+		pool.release(large);
+		assertEquals(1, pool.getFreeBufferCount());
+	}
+	
+	@Test
+	public void testReadWrite() throws Exception {
+		try (PromiseFileChannel channel = PromiseFileChannel.open(factory, pool, source, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			final ByteBuffer data = ByteBuffer.wrap("Hello, world".getBytes(StandardCharsets.UTF_8));
+			assertEquals(Integer.valueOf(12),
+					toCompletableFuture(channel.writeFully(data, 0)).get(5, TimeUnit.SECONDS));
+			
+			final ByteBuffer dst = ByteBuffer.allocate(5);
+			assertEquals(Integer.valueOf(5), toCompletableFuture(channel.read(dst, 7)).get(5, TimeUnit.SECONDS));
+			assertEquals("world", new String(dst.array(), StandardCharsets.UTF_8));
+			
+			assertEquals(Integer.valueOf(-1),
+					toCompletableFuture(channel.read(ByteBuffer.allocate(1), 100)).get(5, TimeUnit.SECONDS));
+		}
+	}
+	
+	@Test
+	public void testReadFully() throws Exception {
+		final byte[] bytes = content(3000);
+		Files.write(source, bytes);
+		
+		try (PromiseFileChannel channel = PromiseFileChannel.open(factory, pool, source, StandardOpenOption.READ)) {
+			final ByteBuffer buffer = toCompletableFuture(channel.readFully(1000, 500)).get(5, TimeUnit.SECONDS);
+			assertTrue(buffer.isDirect());
+			assertEquals(500, buffer.remaining());
+			
+			for (int i = 0; i < 500; i++) {
+				assertEquals(bytes[1000 + i], buffer.get());
+			}
+			
+			channel.release(buffer);
+			
+			// Past the end of the file, fewer bytes are returned
+			final ByteBuffer tail = toCompletableFuture(channel.readFully(2900, 500)).get(5, TimeUnit.SECONDS);
+			assertEquals(100, tail.remaining());
+			channel.release(tail);
+		}
+	}
+	
+	@Test
+	public void testTransferTo() throws Exception {
+		final byte[] bytes = content(200 * 1024);
+		Files.write(source, bytes);
+		
+		try (PromiseFileChannel in = PromiseFileChannel.open(factory, pool, source, StandardOpenOption.READ);
+				PromiseFileChannel out = PromiseFileChannel.open(factory, pool, target, StandardOpenOption.WRITE)) {
+			assertEquals(Long.valueOf(bytes.length), toCompletableFuture(in.transferTo(0, Long.MAX_VALUE, out, 0))
+					.get(5, TimeUnit.SECONDS));
+			assertEquals(Long.valueOf(100), toCompletableFuture(in.transferTo(10, 100, out, bytes.length))
+					.get(5, TimeUnit.SECONDS));
+		}
+		
+		final byte[] copied = Files.readAllBytes(target);
+		assertEquals(bytes.length + 100, copied.length);
+		
+		for (int i = 0; i < bytes.length; i++) {
+			assertEquals(bytes[i], copied[i]);
+		}
+		
+		for (int i = 0; i < 100; i++) {
+			assertEquals(bytes[10 + i], copied[bytes.length + i]);
+		}
+	}
+}
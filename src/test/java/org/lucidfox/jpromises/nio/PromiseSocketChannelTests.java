@@ -0,0 +1,157 @@
+package org.lucidfox.jpromises.nio;
+
+import static org.junit.Assert.*;
+import static org.lucidfox.jpromises.CompletableFutures.toCompletableFuture;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousChannelGroup;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.DeferredInvoker;
+
+public class PromiseSocketChannelTests {
+	private final PromiseFactory factory = new PromiseFactory(new DeferredInvoker() {
+		@Override
+		public void invokeDeferred(final Runnable task) {
+			task.run();
+		}
+	});
+	
+	private final DirectBufferPool pool = new DirectBufferPool();
+	private AsynchronousChannelGroup group;
+	private PromiseServerSocketChannel server;
+	private PromiseSocketChannel client;
+	private PromiseSocketChannel accepted;
+	
+	@Before
+	public void setUp() throws Exception {
+		group = AsynchronousChannelGroup.withFixedThreadPool(2, Executors.defaultThreadFactory());
+		server = PromiseServerSocketChannel.open(factory, pool, group,
+				new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		
+		final Promise<PromiseSocketChannel> acceptPromise = server.accept();
+		client = toCompletableFuture(PromiseSocketChannel.connect(factory, pool, group, server.getLocalAddress()))
+				.get(5, TimeUnit.SECONDS);
+		accepted = toCompletableFuture(acceptPromise).get(5, TimeUnit.SECONDS);
+	}
+	
+	@After
+	public void tearDown() throws Exception {
+		client.close();
+		accepted.close();
+		server.close();
+		group.shutdownNow();
+		group.awaitTermination(5, TimeUnit.SECONDS);
+	}
+	
+	private static ByteBuffer bytes(final String string) {
+		return ByteBuffer.wrap(string.getBytes());
+	}
+	
+	private static String string(final ByteBuffer buffer) {
+		final byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return new String(bytes);
+	}
+	
+	@Test
+	public void testRoundTrip() throws Exception {
+		assertEquals(Long.valueOf(11), toCompletableFuture(client.writeAll(bytes("Hello"), bytes(", "), bytes("TCP"),
+				bytes("!"))).get(5, TimeUnit.SECONDS));
+		
+		final ByteBuffer received = toCompletableFuture(accepted.readFully(11)).get(5, TimeUnit.SECONDS);
+		assertEquals("Hello, TCP!", string(received));
+		accepted.release(received);
+		
+		toCompletableFuture(accepted.writeAll(bytes("pong"))).get(5, TimeUnit.SECONDS);
+		
+		final ByteBuffer head = ByteBuffer.allocate(2);
+		final ByteBuffer tail = ByteBuffer.allocate(2);
+		long read = 0;
+		
+		while (read < 4) {
+			read += toCompletableFuture(client.read(head, tail)).get(5, TimeUnit.SECONDS);
+		}
+		
+		head.flip();
+		tail.flip();
+		assertEquals("po", string(head));
+		assertEquals("ng", string(tail));
+	}
+	
+	@Test
+	public void testReadFullyAfterPeerShutdown() throws Exception {
+		toCompletableFuture(client.writeAll(bytes("short"))).get(5, TimeUnit.SECONDS);
+		client.getChannel().shutdownOutput();
+		
+		final ByteBuffer received = toCompletableFuture(accepted.readFully(100)).get(5, TimeUnit.SECONDS);
+		assertEquals("short", string(received));
+	}
+	
+	@Test
+	public void testConcurrentWritesAreSequenced() throws Exception {
+		final int threadCount = 4;
+		final int messagesPerThread = 200;
+		final int messageSize = 1000;
+		final List<Thread> threads = new ArrayList<>();
+		
+		for (int t = 0; t < threadCount; t++) {
+			final byte id = (byte) t;
+			
+			threads.add(new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < messagesPerThread; i++) {
+						final byte[] message = new byte[messageSize];
+						message[0] = id;
+						message[1] = (byte) i;
+						
+						// Split into two buffers, to exercise gathering writes
+						client.writeAll(ByteBuffer.wrap(message, 0, 10),
+								ByteBuffer.wrap(message, 10, messageSize - 10));
+					}
+				}
+			});
+		}
+		
+		for (final Thread thread: threads) {
+			thread.start();
+		}
+		
+		final Map<Byte, Integer> nextSequence = new HashMap<>();
+		
+		for (int i = 0; i < threadCount * messagesPerThread; i++) {
+			final ByteBuffer message = toCompletableFuture(accepted.readFully(messageSize)).get(5, TimeUnit.SECONDS);
+			assertEquals(messageSize, message.remaining());
+			
+			final byte id = message.get(0);
+			final Integer expected = nextSequence.containsKey(id) ? nextSequence.get(id) : 0;
+			assertEquals((byte) expected.intValue(), message.get(1));
+			nextSequence.put(id, expected + 1);
+			
+			for (int j = 2; j < messageSize; j++) {
+				assertEquals(0, message.get(j));
+			}
+			
+			accepted.release(message);
+		}
+		
+		for (final Thread thread: threads) {
+			thread.join();
+		}
+		
+		assertEquals(threadCount, nextSequence.size());
+	}
+}
@@ -0,0 +1,112 @@
+package org.lucidfox.jpromises.ratelimit;
+
+import static org.junit.Assert.*;
+import static org.lucidfox.jpromises.CompletableFutures.toCompletableFuture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+import org.lucidfox.jpromises.Promise;
+import org.lucidfox.jpromises.PromiseFactory;
+import org.lucidfox.jpromises.core.DeferredInvoker;
+import org.lucidfox.jpromises.core.VoidResolveCallback;
+
+public class AsyncRateLimiterTests {
+	private final PromiseFactory factory = new PromiseFactory(new DeferredInvoker() {
+		@Override
+		public void invokeDeferred(final Runnable task) {
+			task.run();
+		}
+	});
+	
+	private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+	
+	@After
+	public void tearDown() {
+		timer.shutdownNow();
+	}
+	
+	@Test
+	public void testBurst() {
+		final AsyncRateLimiter limiter = new AsyncRateLimiter(factory, timer, 3, 1, 1, TimeUnit.HOURS);
+		
+		assertTrue(limiter.acquire().isDone());
+		assertTrue(limiter.acquire(2).isDone());
+		assertEquals(0, limiter.getAvailablePermits());
+		assertFalse(limiter.tryAcquire(1));
+		assertFalse(limiter.acquire().isDone());
+	}
+	
+	@Test
+	public void testWaitersReleasedInOrder() throws Exception {
+		final long start = System.nanoTime();
+		final AsyncRateLimiter limiter = new AsyncRateLimiter(factory, timer, 4, 2, 20, TimeUnit.MILLISECONDS);
+		assertTrue(limiter.acquire(4).isDone());
+		
+		final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch latch = new CountDownLatch(4);
+		final int[] permits = { 3, 1, 1, 1 };
+		
+		for (int i = 0; i < permits.length; i++) {
+			final int index = i;
+			
+			limiter.acquire(permits[i]).thenAccept(new VoidResolveCallback<Void>() {
+				@Override
+				public void onResolve(final Void value) {
+					order.add(index);
+					latch.countDown();
+				}
+			});
+		}
+		
+		assertTrue(latch.await(5, TimeUnit.SECONDS));
+		// The first waiter needs two refills, and must not be overtaken by the others
+		assertEquals(Arrays.asList(0, 1, 2, 3), order);
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(60));
+	}
+	
+	@Test
+	public void testBulkRelease() throws Exception {
+		final AsyncRateLimiter limiter = new AsyncRateLimiter(factory, timer, 5, 5, 50, TimeUnit.MILLISECONDS);
+		assertTrue(limiter.acquire(5).isDone());
+		
+		final List<Promise<Void>> promises = new ArrayList<>();
+		
+		for (int i = 0; i < 5; i++) {
+			promises.add(limiter.acquire());
+		}
+		
+		toCompletableFuture(promises.get(4)).get(5, TimeUnit.SECONDS);
+		
+		for (final Promise<Void> promise: promises) {
+			assertTrue(promise.isDone());
+		}
+	}
+	
+	@Test
+	public void testRate() throws Exception {
+		final long start = System.nanoTime();
+		final AsyncRateLimiter limiter = new AsyncRateLimiter(factory, timer, 1, 1, 10, TimeUnit.MILLISECONDS);
+		Promise<Void> last = null;
+		
+		for (int i = 0; i < 11; i++) {
+			last = limiter.acquire();
+		}
+		
+		toCompletableFuture(last).get(5, TimeUnit.SECONDS);
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(90));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooManyPermits() {
+		new AsyncRateLimiter(factory, timer, 3, 1, 1, TimeUnit.SECONDS).acquire(4);
+	}
+}